@@ -0,0 +1,207 @@
+package extraction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+import org.apache.uima.fit.util.JCasUtil;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.tudarmstadt.ukp.dkpro.core.api.syntax.type.dependency.Dependency;
+import util.Span;
+
+/**
+ * Dependency structure of a single sentence
+ *
+ * Built once per sentence and shared by all head finding, conjunction
+ * splitting and path length queries. Tokens are addressed by their position in
+ * the sentence, governors and dependents are stored as arrays of positions.
+ */
+public class DependencyIndex {
+
+	private Sentence sent;
+	private List<Token> tokens;
+	private Map<Token, Integer> positions;
+
+	// null = token not part of any dependency, empty = root
+	private int[][] governors;
+	private int[][] dependents;
+
+	// edges by governor, in annotation order
+	private int[][] outEdges;
+	private int[] edgeDependent;
+	private String[] edgeType;
+
+	private int[] rootPathLength;
+
+	public DependencyIndex(Sentence sent) {
+		this.sent = sent;
+		this.tokens = new ArrayList<Token>(JCasUtil.selectCovered(Token.class, sent));
+		this.positions = new HashMap<Token, Integer>();
+		for (int i = 0; i < this.tokens.size(); i++)
+			this.positions.put(this.tokens.get(i), i);
+
+		// same maps as before, their iteration order determines path lengths
+		Map<Token, Set<Token>> govMap = new HashMap<Token, Set<Token>>();
+		Map<Token, Set<Token>> depMap = new HashMap<Token, Set<Token>>();
+		List<Dependency> deps = JCasUtil.selectCovered(Dependency.class, sent);
+		for (Dependency dep : deps) {
+			this.register(dep.getGovernor());
+			this.register(dep.getDependent());
+			if (dep.getDependencyType().equals("root"))
+				govMap.put(dep.getDependent(), new HashSet<Token>());
+			else {
+				if (!govMap.containsKey(dep.getDependent()))
+					govMap.put(dep.getDependent(), new HashSet<Token>());
+				govMap.get(dep.getDependent()).add(dep.getGovernor());
+				if (!depMap.containsKey(dep.getGovernor()))
+					depMap.put(dep.getGovernor(), new HashSet<Token>());
+				depMap.get(dep.getGovernor()).add(dep.getDependent());
+			}
+		}
+
+		int n = this.tokens.size();
+		this.governors = new int[n][];
+		for (Map.Entry<Token, Set<Token>> e : govMap.entrySet())
+			this.governors[this.positions.get(e.getKey())] = this.toPositions(e.getValue());
+		this.dependents = new int[n][];
+		for (Map.Entry<Token, Set<Token>> e : depMap.entrySet())
+			this.dependents[this.positions.get(e.getKey())] = this.toPositions(e.getValue());
+
+		int[] outCount = new int[n];
+		this.edgeDependent = new int[deps.size()];
+		this.edgeType = new String[deps.size()];
+		for (int i = 0; i < deps.size(); i++) {
+			outCount[this.positions.get(deps.get(i).getGovernor())]++;
+			this.edgeDependent[i] = this.positions.get(deps.get(i).getDependent());
+			this.edgeType[i] = deps.get(i).getDependencyType();
+		}
+		this.outEdges = new int[n][];
+		for (int i = 0; i < n; i++)
+			this.outEdges[i] = new int[outCount[i]];
+		Arrays.fill(outCount, 0);
+		for (int i = 0; i < deps.size(); i++) {
+			int gov = this.positions.get(deps.get(i).getGovernor());
+			this.outEdges[gov][outCount[gov]++] = i;
+		}
+
+		this.rootPathLength = new int[n];
+		Arrays.fill(this.rootPathLength, -1);
+	}
+
+	// dependencies can in principle point outside of the sentence's tokens
+	private void register(Token t) {
+		if (!this.positions.containsKey(t)) {
+			this.positions.put(t, this.tokens.size());
+			this.tokens.add(t);
+		}
+	}
+
+	private int[] toPositions(Set<Token> ts) {
+		int[] pos = new int[ts.size()];
+		int i = 0;
+		for (Token t : ts)
+			pos[i++] = this.positions.get(t);
+		return pos;
+	}
+
+	public Sentence getSentence() {
+		return this.sent;
+	}
+
+	public int size() {
+		return this.tokens.size();
+	}
+
+	public Token getToken(int pos) {
+		return this.tokens.get(pos);
+	}
+
+	// -1 if unknown
+	public int getPosition(Token t) {
+		Integer pos = this.positions.get(t);
+		return pos == null ? -1 : pos;
+	}
+
+	public int[] getGovernors(int pos) {
+		return this.governors[pos];
+	}
+
+	public int[] getDependents(int pos) {
+		return this.dependents[pos];
+	}
+
+	public int[] getOutgoingEdges(int pos) {
+		return this.outEdges[pos];
+	}
+
+	public int getEdgeDependent(int edge) {
+		return this.edgeDependent[edge];
+	}
+
+	public String getEdgeType(int edge) {
+		return this.edgeType[edge];
+	}
+
+	public boolean isWithin(int pos, Span span) {
+		Token t = this.tokens.get(pos);
+		return t.getBegin() >= span.start && t.getEnd() <= span.end;
+	}
+
+	/**
+	 * Sum of lengths of all paths to root, cached per token
+	 */
+	public int pathLengthToRoot(Token t) {
+		int pos = this.getPosition(t);
+		if (pos < 0)
+			return 0;
+		if (this.rootPathLength[pos] < 0)
+			this.rootPathLength[pos] = this.pathLengthToRoot(pos, new boolean[this.tokens.size()], 0);
+		return this.rootPathLength[pos];
+	}
+
+	private int pathLengthToRoot(int pos, boolean[] visited, int l) {
+		visited[pos] = true;
+		int pl = 0;
+		if (this.governors[pos] == null || this.governors[pos].length == 0)
+			return l;
+		for (int parent : this.governors[pos]) {
+			if (!visited[parent])
+				pl += this.pathLengthToRoot(parent, visited, l + 1);
+		}
+		return pl;
+	}
+
+	/**
+	 * Span covered by the token and all its (transitive) dependents
+	 */
+	public Span getSubtreeSpan(Token t) {
+		Span span = new Span(t.getBegin(), t.getEnd());
+		int start = this.getPosition(t);
+		if (start < 0)
+			return span;
+
+		boolean[] visited = new boolean[this.tokens.size()];
+		Queue<Integer> queue = new LinkedList<Integer>();
+		queue.add(start);
+		while (!queue.isEmpty()) {
+			int cur = queue.poll();
+			Token curToken = this.tokens.get(cur);
+			span.extend(new Span(curToken.getBegin(), curToken.getEnd()));
+			visited[cur] = true;
+			if (this.dependents[cur] != null)
+				for (int dep : this.dependents[cur])
+					if (!visited[dep])
+						queue.add(dep);
+		}
+		return span;
+	}
+
+}
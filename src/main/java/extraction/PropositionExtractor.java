@@ -7,6 +7,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -16,7 +17,6 @@ import java.util.stream.Collectors;
 
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
-import org.apache.uima.jcas.tcas.Annotation;
 
 import de.tudarmstadt.ukp.dkpro.core.api.coref.type.CoreferenceChain;
 import de.tudarmstadt.ukp.dkpro.core.api.coref.type.CoreferenceLink;
@@ -27,21 +27,24 @@ import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
 import de.tudarmstadt.ukp.dkpro.core.api.semantics.type.SemanticArgument;
 import de.tudarmstadt.ukp.dkpro.core.api.semantics.type.SemanticPredicate;
-import de.tudarmstadt.ukp.dkpro.core.api.syntax.type.dependency.Dependency;
 import edu.stanford.nlp.util.Triple;
 import model.Concept;
 import model.PToken;
 import model.Proposition;
 import pipeline.CmmComponent;
 import pipeline.Extractor;
+import pipeline.ParallelSentenceProcessor;
 import util.Span;
 
 /**
  * Extracts Concepts and Relations based on Open IE Annotations
  * 
  * - resolves pronoun-args based on coref annotations
+ * 
+ * - sentences can be processed in parallel, as extraction only reads the CAS
  */
-public class PropositionExtractor extends CmmComponent implements Extractor {
+public class PropositionExtractor extends CmmComponent
+		implements Extractor, ParallelSentenceProcessor<PropositionExtractor.SentenceResult> {
 
 	private static boolean mustHaveNoun = true;
 	private static int maxLength = 10;
@@ -93,33 +96,64 @@ public class PropositionExtractor extends CmmComponent implements Extractor {
 	@Override
 	public void processSentence(JCas jcas, Sentence sent) {
 		this.buildCorefMap(jcas);
+		this.extract(jcas, new DependencyIndex(sent), this.concepts, this.propositions);
+	}
+
+	@Override
+	public void prepareDocument(JCas jcas) {
+		this.buildCorefMap(jcas);
+	}
+
+	@Override
+	public SentenceResult extractFromSentence(JCas jcas, Sentence sent) {
+		SentenceResult result = new SentenceResult();
+		this.extract(jcas, new DependencyIndex(sent), result.concepts, result.propositions);
+		return result;
+	}
+
+	@Override
+	public void mergeSentence(SentenceResult result, int conceptIdOffset, int propositionIdOffset) {
+		// concepts can occur several times -> shift each object once
+		Set<Concept> shifted = Collections.newSetFromMap(new IdentityHashMap<Concept, Boolean>());
+		for (Concept c : result.concepts) {
+			if (shifted.add(c))
+				c.id += conceptIdOffset;
+		}
+		for (Proposition p : result.propositions)
+			p.id += propositionIdOffset;
+		this.concepts.addAll(result.concepts);
+		this.propositions.addAll(result.propositions);
+	}
+
+	// extract from all Open IE tuples of the sentence, must not modify the CAS
+	private void extract(JCas jcas, DependencyIndex deps, List<Concept> concepts, List<Proposition> propositions) {
 
 		// for each Open IE tuple
-		for (SemanticPredicate relation : JCasUtil.selectCovered(SemanticPredicate.class, sent)) {
+		for (SemanticPredicate relation : JCasUtil.selectCovered(SemanticPredicate.class, deps.getSentence())) {
 
 			String[] info = relation.getCategory().split(";");
 			double conf = Double.parseDouble(info[0]);
 
-			Collection<Concept> sConcepts = this.createConcept(jcas, relation.getArguments(0), conf, sent);
-			Collection<Concept> tConcepts = this.createConcept(jcas, relation.getArguments(1), conf, sent);
+			Collection<Concept> sConcepts = this.createConcept(jcas, relation.getArguments(0), conf, deps);
+			Collection<Concept> tConcepts = this.createConcept(jcas, relation.getArguments(1), conf, deps);
 
 			for (Concept sConcept : sConcepts) {
 				if (sConcept != null) {
 					for (Concept tConcept : tConcepts) {
 						if (sConcept != null && sConcept != tConcept) {
 
-							Proposition p = this.createProposition(relation, sConcept, tConcept, conf, sent, jcas);
+							Proposition p = this.createProposition(relation, sConcept, tConcept, conf, deps, jcas);
 							if (p != null) {
-								this.concepts.add(p.sourceConcept);
-								this.concepts.add(p.targetConcept);
-								this.propositions.add(p);
+								concepts.add(p.sourceConcept);
+								concepts.add(p.targetConcept);
+								propositions.add(p);
 
 								if (applyRuleArg2) {
-									Proposition cp = this.correctProposition(p, sent, jcas);
+									Proposition cp = this.correctProposition(p, deps, jcas);
 									if (cp != null) {
-										this.concepts.add(cp.sourceConcept);
-										this.concepts.add(cp.targetConcept);
-										this.propositions.add(cp);
+										concepts.add(cp.sourceConcept);
+										concepts.add(cp.targetConcept);
+										propositions.add(cp);
 									}
 								}
 							}
@@ -133,13 +167,21 @@ public class PropositionExtractor extends CmmComponent implements Extractor {
 	/**
 	 * create a concept from an Open IE argument
 	 */
-	public Collection<Concept> createConcept(JCas jcas, SemanticArgument arg, double conf, Sentence sent) {
+	public Collection<Concept> createConcept(JCas jcas, SemanticArgument arg, double conf, DependencyIndex deps) {
+		return this.createConcept(jcas, new Span(arg.getBegin(), arg.getEnd()), arg.getRole(), conf, deps);
+	}
+
+	/**
+	 * create a concept from a span with Open IE argument role
+	 */
+	protected Collection<Concept> createConcept(JCas jcas, Span span, String role, double conf,
+			DependencyIndex deps) {
 		Collection<Concept> concepts = new LinkedList<Concept>();
 
-		String[] info = arg.getRole().split(";");
+		String[] info = role.split(";");
 		String type = info[info.length - 1];
 
-		Triple<List<PToken>, PToken, Integer> tokens = this.createTokenList(arg, sent, false);
+		Triple<List<PToken>, PToken, Integer> tokens = this.createTokenList(jcas, span, deps, false);
 		if (tokens == null || tokens.first().size() == 0)
 			return concepts;
 		if (info[0].toLowerCase().trim().length() == 0 || useTokensAsLabel) {
@@ -149,18 +191,18 @@ public class PropositionExtractor extends CmmComponent implements Extractor {
 
 		// try to split conjunctions in this argument
 		if (applyRuleConj) {
-			concepts = this.breakDownConjunction(jcas, sent, arg, conf);
+			concepts = this.breakDownConjunction(jcas, deps, span, role, conf);
 			if (concepts.size() > 0)
 				return concepts;
 		}
 
 		// try to replace pronoun arguments with coreferent NPs
-		if (tokens.first().size() == 1 && tokens.first().get(0).pos.startsWith("P")
-				&& JCasUtil.selectCovered(CoreferenceLink.class, arg).size() > 0) {
-			CoreferenceLink link = JCasUtil.selectCovered(CoreferenceLink.class, arg).get(0);
-			CoreferenceLink head = this.corefMap.get(link);
+		if (tokens.first().size() == 1 && tokens.first().get(0).pos.startsWith("P")) {
+			List<CoreferenceLink> links = JCasUtil.selectCovered(jcas, CoreferenceLink.class, span.start, span.end);
+			CoreferenceLink head = links.size() > 0 ? this.corefMap.get(links.get(0)) : null;
 			if (head != null) {
-				Triple<List<PToken>, PToken, Integer> antTokens = this.createTokenList(head, sent, false);
+				Triple<List<PToken>, PToken, Integer> antTokens = this.createTokenList(jcas,
+						new Span(head.getBegin(), head.getEnd()), deps, false);
 				if (antTokens != null && antTokens.first().size() > 0) {
 					info[0] = head.getCoveredText();
 					tokens = antTokens;
@@ -195,11 +237,12 @@ public class PropositionExtractor extends CmmComponent implements Extractor {
 	 * create a proposition from an Open IE triple
 	 */
 	public Proposition createProposition(SemanticPredicate pred, Concept source, Concept target, double conf,
-			Sentence sent, JCas jcas) {
+			DependencyIndex deps, JCas jcas) {
 
 		String[] info = pred.getCategory().split(";");
 
-		Triple<List<PToken>, PToken, Integer> tokens = this.createTokenList(pred, sent, true);
+		Triple<List<PToken>, PToken, Integer> tokens = this.createTokenList(jcas,
+				new Span(pred.getBegin(), pred.getEnd()), deps, true);
 		if (tokens == null || tokens.first().size() == 0)
 			return null;
 
@@ -213,16 +256,26 @@ public class PropositionExtractor extends CmmComponent implements Extractor {
 				Token t = JCasUtil.selectCovered(jcas, Token.class, pt.start, pt.end).get(0);
 				allTokens.add(t);
 			}
-			Set<Token> newTokens = new HashSet<Token>();
-			for (Dependency dep : JCasUtil.selectCovered(Dependency.class, sent)) {
-				if (allTokens.contains(dep.getGovernor()) && !allTokens.contains(dep.getDependent())
-						&& dep.getDependencyType().startsWith("aux") && dep.getDependent().getBegin() >= left
-						&& dep.getDependent().getEnd() <= right) {
-					newTokens.add(dep.getDependent());
-					auxApplied = true;
-					System.out.println(dep.getDependencyType());
+			// aux edges from the index, in annotation order
+			List<Integer> auxEdges = new ArrayList<Integer>();
+			for (Token t : allTokens) {
+				int pos = deps.getPosition(t);
+				if (pos < 0)
+					continue;
+				for (int edge : deps.getOutgoingEdges(pos)) {
+					Token dependent = deps.getToken(deps.getEdgeDependent(edge));
+					if (!allTokens.contains(dependent) && deps.getEdgeType(edge).startsWith("aux")
+							&& dependent.getBegin() >= left && dependent.getEnd() <= right)
+						auxEdges.add(edge);
 				}
 			}
+			Collections.sort(auxEdges);
+			Set<Token> newTokens = new HashSet<Token>();
+			for (int edge : auxEdges) {
+				newTokens.add(deps.getToken(deps.getEdgeDependent(edge)));
+				auxApplied = true;
+				System.out.println(deps.getEdgeType(edge));
+			}
 			// add them
 			for (Token nt : newTokens)
 				tokens.first().add(this.parent.getToken(nt));
@@ -244,25 +297,29 @@ public class PropositionExtractor extends CmmComponent implements Extractor {
 	}
 
 	// split conjuncts into separate arguments
-	protected Collection<Concept> breakDownConjunction(JCas jcas, Sentence sent, SemanticArgument arg, double conf) {
+	protected Collection<Concept> breakDownConjunction(JCas jcas, DependencyIndex deps, Span span, String role,
+			double conf) {
 		Collection<Concept> concepts = new LinkedList<Concept>();
 
-		Set<Token> heads = this.getHeadsOfSpan(sent, arg);
+		Set<Token> heads = this.getHeadsOfSpan(jcas, deps, span);
 		if (heads.size() == 1) {
 
 			Token head = heads.iterator().next();
-			Span headSpan = new Span(arg.getBegin(), arg.getEnd());
+			Span headSpan = new Span(span.start, span.end);
 
 			List<Span> conjSpans = new ArrayList<Span>();
-			for (Dependency dep : JCasUtil.selectCovered(Dependency.class, sent)) {
-				// all deps of head
-				if (dep.getGovernor() == head && dep.getDependent().getBegin() >= arg.getBegin()
-						&& dep.getDependent().getEnd() <= arg.getEnd()) {
-					// collect conjuncts
-					if (dep.getDependencyType().startsWith("conj")) {
-						Span conjSpan = this.findTokDepSpan(sent, dep.getDependent());
-						conjSpans.add(conjSpan);
-						headSpan.reduce(conjSpan);
+			int headPos = deps.getPosition(head);
+			if (headPos >= 0) {
+				for (int edge : deps.getOutgoingEdges(headPos)) {
+					// all deps of head
+					int dependent = deps.getEdgeDependent(edge);
+					if (deps.isWithin(dependent, span)) {
+						// collect conjuncts
+						if (deps.getEdgeType(edge).startsWith("conj")) {
+							Span conjSpan = deps.getSubtreeSpan(deps.getToken(dependent));
+							conjSpans.add(conjSpan);
+							headSpan.reduce(conjSpan);
+						}
 					}
 				}
 			}
@@ -270,15 +327,8 @@ public class PropositionExtractor extends CmmComponent implements Extractor {
 
 			if (conjSpans.size() > 1 && !Span.intersect(conjSpans)) {
 				for (Span conjSpan : conjSpans) {
-
-					SemanticArgument dummy = new SemanticArgument(jcas);
-					dummy.setBegin(conjSpan.start);
-					dummy.setEnd(conjSpan.end);
-
-					String[] infoOld = arg.getRole().split(";");
-					dummy.setRole(";;" + infoOld[2]);
-
-					concepts.addAll(this.createConcept(jcas, dummy, conf, sent));
+					String[] infoOld = role.split(";");
+					concepts.addAll(this.createConcept(jcas, conjSpan, ";;" + infoOld[2], conf, deps));
 				}
 			}
 		}
@@ -286,7 +336,7 @@ public class PropositionExtractor extends CmmComponent implements Extractor {
 	}
 
 	// try to correct spans of relation phrase and arg2
-	protected Proposition correctProposition(Proposition p, Sentence sent, JCas jcas) {
+	protected Proposition correctProposition(Proposition p, DependencyIndex deps, JCas jcas) {
 
 		List<PToken> relToken = new ArrayList<PToken>(p.relationPhraseToken);
 		List<PToken> arg2Token = new ArrayList<PToken>(p.targetConcept.tokenList);
@@ -308,9 +358,8 @@ public class PropositionExtractor extends CmmComponent implements Extractor {
 						&& !arg2TokenNew.get(0).pos.startsWith("J"))
 					return null;
 
-				Annotation dummy = new Annotation(jcas, arg2TokenNew.get(0).start,
-						arg2TokenNew.get(arg2TokenNew.size() - 1).end);
-				Triple<List<PToken>, PToken, Integer> arg2Tokens = this.createTokenList(dummy, sent, false);
+				Span arg2Span = new Span(arg2TokenNew.get(0).start, arg2TokenNew.get(arg2TokenNew.size() - 1).end);
+				Triple<List<PToken>, PToken, Integer> arg2Tokens = this.createTokenList(jcas, arg2Span, deps, false);
 				if (arg2Tokens == null || arg2Tokens.first().size() == 0)
 					return null;
 
@@ -321,8 +370,8 @@ public class PropositionExtractor extends CmmComponent implements Extractor {
 				nArg2.headToken = arg2Tokens.second();
 				nArg2.headDepDepth = arg2Tokens.third();
 
-				dummy = new Annotation(jcas, relToken.get(0).start, relToken.get(relToken.size() - 1).end);
-				Triple<List<PToken>, PToken, Integer> relTokens = this.createTokenList(dummy, sent, true);
+				Span relSpan = new Span(relToken.get(0).start, relToken.get(relToken.size() - 1).end);
+				Triple<List<PToken>, PToken, Integer> relTokens = this.createTokenList(jcas, relSpan, deps, true);
 				if (relTokens == null || relTokens.first().size() == 0)
 					return null;
 
@@ -373,11 +422,12 @@ public class PropositionExtractor extends CmmComponent implements Extractor {
 		return links;
 	}
 
-	// collect tokens covered by an annotation
-	protected Triple<List<PToken>, PToken, Integer> createTokenList(Annotation a, Sentence sent, boolean isProp) {
+	// collect tokens covered by a span
+	protected Triple<List<PToken>, PToken, Integer> createTokenList(JCas jcas, Span span, DependencyIndex deps,
+			boolean isProp) {
 
 		// tokens
-		List<Token> tokens = JCasUtil.selectCovered(Token.class, a);
+		List<Token> tokens = JCasUtil.selectCovered(jcas, Token.class, span.start, span.end);
 
 		Class[] invStartEndPoS = { PUNC.class, CONJ.class };
 		Set<Class> invStartEndPoSSet = new HashSet<Class>(Arrays.asList(invStartEndPoS));
@@ -398,7 +448,7 @@ public class PropositionExtractor extends CmmComponent implements Extractor {
 		}
 
 		// find head
-		Set<Token> heads = this.getHeadsOfSpan(sent, a);
+		Set<Token> heads = this.getHeadsOfSpan(jcas, deps, span);
 		if (heads.size() == 0)
 			heads.addAll(tokens);
 
@@ -424,54 +474,50 @@ public class PropositionExtractor extends CmmComponent implements Extractor {
 		}
 
 		// determine path length to root
-		Map<Token, Set<Token>> deps = this.buildGovMap(sent);
-		int l = this.pathLengthToRoot(head, deps);
+		int l = deps.pathLengthToRoot(head);
 
 		Triple<List<PToken>, PToken, Integer> result = new Triple<List<PToken>, PToken, Integer>(pTokens,
 				mapping.get(head), l);
 		return result;
 	}
 
-	private Set<Token> getHeadsOfSpan(Sentence sent, Annotation a) {
-
-		// map: token -> governor(s)
-		Map<Token, Set<Token>> deps = this.buildGovMap(sent);
+	private Set<Token> getHeadsOfSpan(JCas jcas, DependencyIndex deps, Span span) {
 
 		// collect all heads (= have governor outside of span)
 		Set<Token> heads = new HashSet<Token>();
-		List<Token> ts = JCasUtil.selectCovered(Token.class, a);
+		List<Token> ts = JCasUtil.selectCovered(jcas, Token.class, span.start, span.end);
 		if (ts.size() == 1) {
 			heads.add(ts.get(0));
 		} else {
 			for (Token t : ts) {
-				Set<Token> visited = new HashSet<Token>();
-				Queue<Token> queue = new LinkedList<Token>();
-				queue.add(t);
+				int start = deps.getPosition(t);
+				if (start < 0)
+					continue;
+				boolean[] visited = new boolean[deps.size()];
+				Queue<Integer> queue = new LinkedList<Integer>();
+				queue.add(start);
 				while (!queue.isEmpty()) {
-					Token cur = queue.poll();
-					visited.add(cur);
-					if (deps.get(cur) != null) {
-						if (deps.get(cur).size() == 0) {
+					int cur = queue.poll();
+					visited[cur] = true;
+					int[] allGovs = deps.getGovernors(cur);
+					if (allGovs != null) {
+						if (allGovs.length == 0) {
 							// is root and in span: use this
-							if (cur.getBegin() >= a.getBegin() && cur.getEnd() <= a.getEnd())
-								heads.add(cur);
+							if (deps.isWithin(cur, span))
+								heads.add(deps.getToken(cur));
 						} else {
 							// if multiple, prefer governors within the span
-							Set<Token> allGovs = deps.get(cur);
-							Set<Token> withinSpanGovs = new HashSet<Token>(allGovs);
-							for (Token gov : allGovs)
-								if (!(gov.getBegin() >= a.getBegin()) || !(gov.getEnd() <= a.getEnd()))
-									withinSpanGovs.remove(gov);
-							if (withinSpanGovs.isEmpty())
-								withinSpanGovs.addAll(allGovs);
-							for (Token gov : withinSpanGovs) {
-								// governor within span: check it
-								if (gov.getBegin() >= a.getBegin() && gov.getEnd() <= a.getEnd()) {
-									if (!visited.contains(gov))
+							boolean anyWithin = false;
+							for (int gov : allGovs)
+								anyWithin |= deps.isWithin(gov, span);
+							for (int gov : allGovs) {
+								if (deps.isWithin(gov, span)) {
+									// governor within span: check it
+									if (!visited[gov])
 										queue.add(gov);
-								} else {
+								} else if (!anyWithin) {
 									// governor out of span: use this
-									heads.add(cur);
+									heads.add(deps.getToken(cur));
 								}
 							}
 						}
@@ -483,69 +529,6 @@ public class PropositionExtractor extends CmmComponent implements Extractor {
 		return heads;
 	}
 
-	private int pathLengthToRoot(Token t, Map<Token, Set<Token>> deps) {
-		Set<Token> visited = new HashSet<Token>();
-		return this.pathLengthToRoot(t, deps, visited, 0);
-	}
-
-	private int pathLengthToRoot(Token t, Map<Token, Set<Token>> deps, Set<Token> visited, int l) {
-		visited.add(t);
-		int pl = 0;
-		if (deps.get(t) == null || deps.get(t).size() == 0)
-			return l;
-		for (Token parent : deps.get(t)) {
-			if (visited.contains(parent))
-				pl += 0;
-			else
-				pl += this.pathLengthToRoot(parent, deps, visited, l + 1);
-		}
-		return pl;
-	}
-
-	private Span findTokDepSpan(Sentence sent, Token t) {
-
-		// map: token -> dependents
-		Map<Token, Set<Token>> deps = new HashMap<Token, Set<Token>>();
-		for (Dependency dep : JCasUtil.selectCovered(Dependency.class, sent)) {
-			if (!dep.getDependencyType().equals("root")) {
-				if (!deps.containsKey(dep.getGovernor()))
-					deps.put(dep.getGovernor(), new HashSet<Token>());
-				deps.get(dep.getGovernor()).add(dep.getDependent());
-			}
-		}
-
-		Span span = new Span(Integer.MAX_VALUE, -1);
-		Queue<Token> queue = new LinkedList<Token>();
-		Set<Token> visited = new HashSet<Token>();
-		queue.add(t);
-		while (!queue.isEmpty()) {
-			Token cur = queue.poll();
-			span.extend(new Span(cur.getBegin(), cur.getEnd()));
-			visited.add(cur);
-			if (deps.get(cur) != null)
-				for (Token dep : deps.get(cur))
-					if (!visited.contains(dep))
-						queue.add(dep);
-		}
-
-		return span;
-	}
-
-	private Map<Token, Set<Token>> buildGovMap(Sentence sent) {
-		// map: token -> governor(s)
-		Map<Token, Set<Token>> deps = new HashMap<Token, Set<Token>>();
-		for (Dependency dep : JCasUtil.selectCovered(Dependency.class, sent)) {
-			if (dep.getDependencyType().equals("root"))
-				deps.put(dep.getDependent(), new HashSet<Token>());
-			else {
-				if (!deps.containsKey(dep.getDependent()))
-					deps.put(dep.getDependent(), new HashSet<Token>());
-				deps.get(dep.getDependent()).add(dep.getGovernor());
-			}
-		}
-		return deps;
-	}
-
 	// get name of current document
 	protected String getDocId(JCas jcas) {
 		DocumentMetaData meta = (DocumentMetaData) jcas.getDocumentAnnotationFs();
@@ -562,4 +545,14 @@ public class PropositionExtractor extends CmmComponent implements Extractor {
 		return this.propositions;
 	}
 
+	/**
+	 * Concepts and propositions extracted from a single sentence
+	 */
+	public static class SentenceResult {
+
+		protected List<Concept> concepts = new ArrayList<Concept>();
+		protected List<Proposition> propositions = new ArrayList<Proposition>();
+
+	}
+
 }
\ No newline at end of file
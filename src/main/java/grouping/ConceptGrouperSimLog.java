@@ -1,9 +1,6 @@
 package grouping;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -13,18 +10,14 @@ import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
-import org.nustaq.serialization.FSTObjectInput;
-import org.nustaq.serialization.FSTObjectOutput;
-
 import com.carrotsearch.hppc.ObjectDoubleHashMap;
 import com.carrotsearch.hppc.ObjectDoubleMap;
-import com.carrotsearch.hppc.cursors.ObjectDoubleCursor;
 
 import edu.stanford.nlp.util.Pair;
-import grouping.clf.sim.CachedSim;
 import grouping.clf.sim.ConceptSimilarityMeasure;
 import grouping.clf.sim.EditDistance;
 import grouping.clf.sim.JaccardDistance;
+import grouping.clf.sim.SimilarityStore;
 import grouping.clf.sim.WordBasedMeasure;
 import grouping.clf.sim.WordEmbeddingDistance;
 import grouping.clf.sim.WordEmbeddingDistance.EmbeddingType;
@@ -41,10 +34,9 @@ import semilar.config.ConfigManager;
 import semilar.tools.semantic.WordNetSimilarity;
 import semilar.wordmetrics.LSAWordMetric;
 import util.Muter;
-import util.StringPair;
 import weka.classifiers.Classifier;
+import weka.classifiers.functions.Logistic;
 import weka.core.Attribute;
-import weka.core.DenseInstance;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.SerializationHelper;
@@ -58,47 +50,42 @@ import weka.core.SerializationHelper;
 public class ConceptGrouperSimLog extends ConceptGrouperBase implements Extractor {
 
 	private static final String cacheFolder = "data/grouping/cache";
-	private static final int pairsPerFile = 10000000;
 	private static boolean saveCache = false;
 	private static boolean parallel = false;
+	private static boolean blocking = false;
+	private static boolean offHeapFeatures = false;
 
 	private final String modelName = "models/grouping_Logistic-sim5.model";
-	private AbstractConceptClusterer clusterer = new GreedyLocalOptimizer();
+	private AbstractConceptClusterer clusterer = new GreedyLocalOptimizer(0.5,
+			parallel ? Runtime.getRuntime().availableProcessors() : 1);
 
 	@Override
 	public void processCollection() {
 
-		String topic = this.parent.getTargetLocation().substring(this.parent.getTargetLocation().lastIndexOf("/") + 1);
-
 		// get extracted concepts and propositions
 		Extractor ex = this.parent.getPrevExtractor(this);
 		this.concepts = ex.getConcepts();
 		this.propositions = ex.getPropositions();
-		for (Concept c : this.concepts)
-			this.fixLemmas(c);
+		this.fixLemmas(this.concepts);
 
 		// group by same label
 		Map<Concept, ConceptGroup> groups = LemmaGrouper.group(this.concepts);
 		List<Concept> repConcepts = new ArrayList<Concept>(groups.keySet());
 		this.parent.log(this, "unique concepts: " + groups.size());
 
-		// build all pairs for classifier
-		List<CPair> pairs = this.buildPairs(repConcepts);
+		// build all pairs for classifier, or only candidates
+		List<CPair> pairs = blocking ? new PairBlocker().buildPairs(repConcepts) : this.buildPairs(repConcepts);
 		this.parent.log(this, "concept pairs: " + pairs.size());
 
 		// compute similarity features
-		Instances features = this.computeFeatures(pairs, topic);
+		PairFeatureMatrix features = this.computeFeatures(pairs);
 
 		// apply classifier
 		ObjectDoubleMap<CPair> predictions = new ObjectDoubleHashMap<CPair>(pairs.size());
 		try {
-			Classifier clf = (Classifier) SerializationHelper.read(modelName);
-			for (int i = 0; i < pairs.size(); i++) {
-				CPair pair = pairs.get(i);
-				Instance feat = features.instance(i);
-				double[] pred = clf.distributionForInstance(feat);
-				predictions.put(pair, pred[1]);
-			}
+			double[] pred = this.classify(features);
+			for (int i = 0; i < pairs.size(); i++)
+				predictions.put(pairs.get(i), pred[i]);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -114,7 +101,7 @@ public class ConceptGrouperSimLog extends ConceptGrouperBase implements Extracto
 		this.parent.log(this, "relations: " + propositions.size());
 	}
 
-	private Instances computeFeatures(List<CPair> pairs, String topic) {
+	private PairFeatureMatrix computeFeatures(List<CPair> pairs) {
 
 		// setup similarities
 		List<ConceptSimilarityMeasure> sims = new ArrayList<ConceptSimilarityMeasure>();
@@ -125,39 +112,43 @@ public class ConceptGrouperSimLog extends ConceptGrouperBase implements Extracto
 		sims.add(new WordBasedMeasure(new LSAWordMetric("LSA-MODEL-TASA-LEMMATIZED-DIM300")));
 		sims.add(new WordEmbeddingDistance(EmbeddingType.WORD2VEC, 300, true));
 
-		// prepare dataset
-		Instances features = this.createDataSet(sims);
-		for (CPair pair : pairs) {
-			double[] vals = new double[sims.size() + 1];
-			Instance instance = new DenseInstance(1.0, vals);
-			features.add(instance);
-		}
+		// prepare feature columns
+		List<String> names = sims.stream().map(s -> s.getName()).collect(Collectors.toList());
+		PairFeatureMatrix features = new PairFeatureMatrix(names, pairs.size(), offHeapFeatures);
 
 		// compute similarities
 		for (int a = 0; a < sims.size(); a++) {
 			ConceptSimilarityMeasure sim = sims.get(a);
 			this.parent.log(this, "computing features: " + sim.getName());
 
-			// load cache
-			String cacheFile = cacheFolder + "/" + sim.getName() + "." + topic + ".fst";
-			ObjectDoubleHashMap<StringPair> cache = loadCache(cacheFile, pairs.size());
+			// open cache, shared by all topics
+			String cacheFile = cacheFolder + "/" + sim.getName() + ".sim";
+			SimilarityStore cache = this.openCache(cacheFile);
 
 			// lookup in cache
 			List<Pair<CPair, Integer>> toCompute = new ArrayList<Pair<CPair, Integer>>();
 			for (int i = 0; i < pairs.size(); i++) {
 				CPair pair = pairs.get(i);
-				double s = this.getFromCache(cache, pair.c1, pair.c2);
-				if (s == -1)
+				double s = cache != null ? cache.get(pair.c1.name, pair.c2.name) : Double.NaN;
+				if (Double.isNaN(s))
 					toCompute.add(new Pair<CPair, Integer>(pair, i));
 				else
-					features.instance(i).setValue(a, s);
+					features.set(a, i, s);
 			}
 			System.out.println("to compute: " + toCompute.size());
+			if (!toCompute.isEmpty()) {
+				Set<Concept> toPrepare = new HashSet<Concept>();
+				for (Pair<CPair, Integer> p : toCompute) {
+					toPrepare.add(p.first().c1);
+					toPrepare.add(p.first().c2);
+				}
+				sim.prepare(toPrepare);
+			}
 
 			// compute per instance
 			Muter.mute();
 			List<Pair<Integer, Double>> results = null;
-			if (parallel && !(sim instanceof JaccardDistance || sim instanceof WordBasedMeasure)) {
+			if (parallel) {
 				results = toCompute.parallelStream().map(
 						p -> new Pair<Integer, Double>(p.second(), sim.computeSimilarity(p.first().c1, p.first().c2)))
 						.collect(Collectors.toList());
@@ -168,27 +159,73 @@ public class ConceptGrouperSimLog extends ConceptGrouperBase implements Extracto
 			}
 
 			for (Pair<Integer, Double> p : results) {
-				features.instance(p.first()).setValue(a, p.second());
-				if (saveCache) {
+				features.set(a, p.first(), p.second());
+				if (saveCache && cache != null) {
 					CPair pair = pairs.get(p.first());
-					this.addToCache(cache, pair.c1, pair.c2, p.second());
+					cache.put(pair.c1.name, pair.c2.name, p.second());
 				}
 			}
 			Muter.unmute();
 
-			// save
-			if (saveCache)
-				this.saveCache(cache, cacheFile);
+			if (cache != null)
+				cache.close();
+			if (sim instanceof WordBasedMeasure)
+				this.parent.log(this, ((WordBasedMeasure) sim).getWordCache().getStats());
 		}
 
 		return features;
 	}
 
-	private Instances createDataSet(List<ConceptSimilarityMeasure> sims) {
+	/**
+	 * probabilities of merge for all pairs
+	 * 
+	 * logistic regression models are applied as one linear function over the
+	 * feature columns, checked against Weka on the first pairs, other models
+	 * row by row
+	 */
+	private double[] classify(PairFeatureMatrix features) throws Exception {
+
+		Classifier clf = (Classifier) SerializationHelper.read(modelName);
+		Instances dataset = this.createDataSet(features);
+		Instance inst = null;
+
+		double[] pred = null;
+		if (clf instanceof Logistic) {
+			double[][] coef = ((Logistic) clf).coefficients();
+			if (coef.length == features.numFeatures() + 1) {
+				double[] weights = new double[features.numFeatures()];
+				for (int f = 0; f < weights.length; f++)
+					weights[f] = coef[f + 1][0];
+				pred = features.linearScores(coef[0][0], weights);
+				for (int i = 0; i < pred.length; i++)
+					pred[i] = 1 / (1 + Math.exp(pred[i]));
+				for (int i = 0; i < Math.min(100, pred.length); i++) {
+					inst = features.toInstance(i, dataset, inst);
+					if (Math.abs(clf.distributionForInstance(inst)[1] - pred[i]) > 1e-6) {
+						System.err.println("linear scores differ from Weka, classifying row by row");
+						pred = null;
+						break;
+					}
+				}
+			}
+		}
+
+		if (pred == null) {
+			pred = new double[features.size()];
+			for (int i = 0; i < pred.length; i++) {
+				inst = features.toInstance(i, dataset, inst);
+				pred[i] = clf.distributionForInstance(inst)[1];
+			}
+		}
+
+		return pred;
+	}
+
+	private Instances createDataSet(PairFeatureMatrix features) {
 
 		ArrayList<Attribute> atts = new ArrayList<Attribute>();
-		for (ConceptSimilarityMeasure sim : sims)
-			atts.add(new Attribute(sim.getName()));
+		for (int f = 0; f < features.numFeatures(); f++)
+			atts.add(new Attribute(features.getName(f)));
 
 		List<String> classes = new ArrayList<String>();
 		classes.add("no merge");
@@ -201,11 +238,12 @@ public class ConceptGrouperSimLog extends ConceptGrouperBase implements Extracto
 		return data;
 	}
 
-	private void fixLemmas(Concept c) {
-		for (int i = 0; i < c.tokenList.size(); i++) {
-			PToken t = c.tokenList.get(i);
-			t = NonUIMAPreprocessor.getInstance().lemmatize(t);
-		}
+	// all tokens at once, each distinct word is lemmatized only once
+	private void fixLemmas(List<Concept> concepts) {
+		List<PToken> tokens = new ArrayList<PToken>();
+		for (Concept c : concepts)
+			tokens.addAll(c.tokenList);
+		NonUIMAPreprocessor.getInstance().lemmatize(tokens);
 	}
 
 	private void updateDataStructures(Set<List<Concept>> clusters, Map<Concept, ConceptGroup> groups) {
@@ -257,68 +295,23 @@ public class ConceptGrouperSimLog extends ConceptGrouperBase implements Extracto
 		return pairs;
 	}
 
-	private double getFromCache(ObjectDoubleHashMap<StringPair> cache, Concept c1, Concept c2) {
-		StringPair cacheKey = new StringPair(c1.name.toLowerCase().trim(), c2.name.toLowerCase().trim());
-		return cache.getOrDefault(cacheKey, -1.0);
-	}
-
-	private void addToCache(ObjectDoubleHashMap<StringPair> cache, Concept c1, Concept c2, double d) {
-		StringPair cacheKey = new StringPair(c1.name.toLowerCase().trim(), c2.name.toLowerCase().trim());
-		cache.put(cacheKey, d);
-	}
-
-	private ObjectDoubleHashMap<StringPair> loadCache(String fileName, int maxSize) {
-		System.out.println("Loading cache");
-		ObjectDoubleHashMap<StringPair> cache = new ObjectDoubleHashMap<StringPair>(maxSize);
-		try {
-			int fileCounter = 0;
-			while (true) {
-				File file = new File(fileName + fileCounter);
-				if (!file.exists())
-					break;
-				System.out.println(file.getName());
-				FSTObjectInput in = new FSTObjectInput(new FileInputStream(file));
-				Object o = null;
-				while ((o = in.readObject(CachedSim.class)) != null) {
-					CachedSim sim = (CachedSim) o;
-					cache.put(sim.pair, sim.sim);
-				}
-				in.close();
-				fileCounter++;
-			}
-		} catch (FileNotFoundException e) {
-			// ok, will return empty map then
-		} catch (Exception e) {
-			e.printStackTrace();
+	/**
+	 * saves caches shared by all topics, called once after all topics are done
+	 */
+	public static void saveCaches() {
+		if (saveCache) {
+			WordBasedMeasure.saveWordCaches();
+			NonUIMAPreprocessor.getInstance().saveLemmaCache();
 		}
-		System.out.println("--- done: " + cache.size());
-		return cache;
 	}
 
-	private void saveCache(ObjectDoubleHashMap<StringPair> cache, String fileName) {
-		System.out.println("Saving cache");
+	private SimilarityStore openCache(String fileName) {
 		try {
-			int count = 0;
-			int fileCounter = 0;
-			FSTObjectOutput out = new FSTObjectOutput(new FileOutputStream(fileName + fileCounter));
-			for (ObjectDoubleCursor<StringPair> pair : cache) {
-				if (count == pairsPerFile) {
-					out.writeObject(null, CachedSim.class);
-					out.close();
-					fileCounter++;
-					out = new FSTObjectOutput(new FileOutputStream(fileName + fileCounter));
-					count = 0;
-				}
-				CachedSim sim = new CachedSim(pair.key, pair.value);
-				out.writeObject(sim, CachedSim.class);
-				count++;
-			}
-			out.writeObject(null, CachedSim.class);
-			out.close();
-		} catch (Exception e) {
+			return SimilarityStore.open(fileName, saveCache);
+		} catch (IOException e) {
 			e.printStackTrace();
+			return null;
 		}
-		System.out.println("--- done: " + cache.size());
 	}
 
 }
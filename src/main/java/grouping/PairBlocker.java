@@ -0,0 +1,171 @@
+package grouping;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.LongHashSet;
+
+import model.CPair;
+import model.Concept;
+import opennlp.tools.stemmer.Stemmer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer;
+import opennlp.tools.tokenize.SimpleTokenizer;
+import util.Stopwords;
+
+/**
+ * Candidate pairs for concept grouping instead of all pairs (blocking)
+ * 
+ * Two concepts become a candidate pair if they share a stemmed content word or
+ * if their MinHash signatures over character n-grams agree in at least one band
+ * (locality sensitive hashing). More bands or fewer rows per band increase
+ * recall. Words and buckets shared by more than maxBucket concepts are ignored
+ * and at most pairsPerConcept * |concepts| pairs are returned, preferring
+ * shared words and high estimated n-gram overlap.
+ */
+public class PairBlocker {
+
+	private static final int NGRAM = 3;
+	private static final long PRIME = 2147483647L;
+
+	private int bands;
+	private int rows;
+	private int pairsPerConcept;
+	private int maxBucket;
+
+	private Stemmer stemmer;
+	private Stopwords stopwords;
+	private long[] hashA;
+	private long[] hashB;
+
+	public PairBlocker() {
+		this(20, 3, 50, 200);
+	}
+
+	public PairBlocker(int bands, int rows, int pairsPerConcept, int maxBucket) {
+		this.bands = bands;
+		this.rows = rows;
+		this.pairsPerConcept = pairsPerConcept;
+		this.maxBucket = maxBucket;
+		this.stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
+		this.stopwords = new Stopwords();
+
+		Random rand = new Random(42);
+		this.hashA = new long[bands * rows];
+		this.hashB = new long[bands * rows];
+		for (int k = 0; k < this.hashA.length; k++) {
+			this.hashA[k] = 1 + rand.nextInt(Integer.MAX_VALUE - 1);
+			this.hashB[k] = rand.nextInt(Integer.MAX_VALUE);
+		}
+	}
+
+	public List<CPair> buildPairs(List<Concept> concepts) {
+
+		int n = concepts.size();
+		int[][] signatures = new int[n][];
+		List<Set<String>> stems = new ArrayList<Set<String>>(n);
+		for (int i = 0; i < n; i++) {
+			String name = concepts.get(i).name.toLowerCase().trim();
+			signatures[i] = this.minHash(name);
+			stems.add(this.stems(name));
+		}
+
+		// candidates from shared stems
+		LongHashSet candidates = new LongHashSet();
+		LongHashSet sharedStem = new LongHashSet();
+		Map<String, IntArrayList> postings = new HashMap<String, IntArrayList>();
+		for (int i = 0; i < n; i++)
+			for (String stem : stems.get(i))
+				postings.computeIfAbsent(stem, k -> new IntArrayList()).add(i);
+		for (IntArrayList bucket : postings.values())
+			this.addBucket(bucket, n, sharedStem);
+		candidates.addAll(sharedStem);
+
+		// candidates from colliding signature bands
+		for (int b = 0; b < this.bands; b++) {
+			Map<Long, IntArrayList> buckets = new HashMap<Long, IntArrayList>();
+			for (int i = 0; i < n; i++) {
+				long key = 17;
+				for (int r = b * this.rows; r < (b + 1) * this.rows; r++)
+					key = key * 31 + signatures[i][r];
+				buckets.computeIfAbsent(key, k -> new IntArrayList()).add(i);
+			}
+			for (IntArrayList bucket : buckets.values())
+				this.addBucket(bucket, n, candidates);
+		}
+
+		// keep best pairs within budget
+		long[] keys = candidates.toArray();
+		long budget = (long) this.pairsPerConcept * n;
+		if (keys.length > budget) {
+			double[] scores = new double[keys.length];
+			Integer[] order = new Integer[keys.length];
+			for (int k = 0; k < keys.length; k++) {
+				int i = (int) (keys[k] / n);
+				int j = (int) (keys[k] % n);
+				scores[k] = this.estimateOverlap(signatures[i], signatures[j]) + (sharedStem.contains(keys[k]) ? 1 : 0);
+				order[k] = k;
+			}
+			Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+			long[] kept = new long[(int) budget];
+			for (int k = 0; k < kept.length; k++)
+				kept[k] = keys[order[k]];
+			keys = kept;
+		}
+		Arrays.sort(keys);
+
+		List<CPair> pairs = new ArrayList<CPair>(keys.length);
+		for (long key : keys)
+			pairs.add(new CPair(concepts.get((int) (key / n)), concepts.get((int) (key % n))));
+		return pairs;
+	}
+
+	// all pairs i < j of a bucket, encoded as i * n + j
+	private void addBucket(IntArrayList bucket, int n, LongHashSet pairs) {
+		if (bucket.size() < 2 || bucket.size() > this.maxBucket)
+			return;
+		for (int x = 0; x < bucket.size(); x++)
+			for (int y = x + 1; y < bucket.size(); y++)
+				pairs.add((long) bucket.get(x) * n + bucket.get(y));
+	}
+
+	private int[] minHash(String name) {
+		int[] sig = new int[this.hashA.length];
+		Arrays.fill(sig, Integer.MAX_VALUE);
+		String padded = " " + name + " ";
+		int last = Math.max(1, padded.length() - NGRAM + 1);
+		for (int p = 0; p < last; p++) {
+			long x = padded.substring(p, Math.min(padded.length(), p + NGRAM)).hashCode() & 0x7fffffffL;
+			for (int k = 0; k < sig.length; k++) {
+				int h = (int) ((this.hashA[k] * x + this.hashB[k]) % PRIME);
+				if (h < sig[k])
+					sig[k] = h;
+			}
+		}
+		return sig;
+	}
+
+	private double estimateOverlap(int[] sig1, int[] sig2) {
+		int same = 0;
+		for (int k = 0; k < sig1.length; k++)
+			if (sig1[k] == sig2[k])
+				same++;
+		return same / (double) sig1.length;
+	}
+
+	private Set<String> stems(String name) {
+		Set<String> stems = new HashSet<String>();
+		for (String word : SimpleTokenizer.INSTANCE.tokenize(name)) {
+			if (word.length() > 1 && !this.stopwords.isSW(word))
+				stems.add(this.stemmer.stem(word).toString());
+		}
+		return stems;
+	}
+
+}
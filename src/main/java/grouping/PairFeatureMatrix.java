@@ -0,0 +1,96 @@
+package grouping;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Similarity features of concept pairs, stored column-wise with one float per
+ * pair and feature
+ * 
+ * Columns are kept on the heap or, to keep large topics out of the garbage
+ * collected heap, in direct buffers. Rows can be written concurrently.
+ */
+public class PairFeatureMatrix {
+
+	private List<String> names;
+	private int size;
+	private FloatBuffer[] columns;
+
+	public PairFeatureMatrix(List<String> names, int size, boolean offHeap) {
+		this.names = names;
+		this.size = size;
+		this.columns = new FloatBuffer[names.size()];
+		// a direct buffer holds at most Integer.MAX_VALUE bytes
+		if (offHeap && size > Integer.MAX_VALUE / 4)
+			throw new IllegalArgumentException(
+					"too many pairs for off-heap feature columns: " + size + " > " + Integer.MAX_VALUE / 4);
+		for (int f = 0; f < this.columns.length; f++) {
+			if (offHeap)
+				this.columns[f] = ByteBuffer.allocateDirect(4 * size).order(ByteOrder.nativeOrder()).asFloatBuffer();
+			else
+				this.columns[f] = FloatBuffer.allocate(size);
+		}
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public int numFeatures() {
+		return this.columns.length;
+	}
+
+	public String getName(int feature) {
+		return this.names.get(feature);
+	}
+
+	public float get(int feature, int pair) {
+		return this.columns[feature].get(pair);
+	}
+
+	public void set(int feature, int pair, double value) {
+		this.columns[feature].put(pair, (float) value);
+	}
+
+	/**
+	 * intercept + weights * features for all pairs, accumulated column by
+	 * column
+	 */
+	public double[] linearScores(double intercept, double[] weights) {
+		double[] scores = new double[this.size];
+		Arrays.fill(scores, intercept);
+		for (int f = 0; f < this.columns.length; f++) {
+			double w = weights[f];
+			if (w == 0)
+				continue;
+			FloatBuffer col = this.columns[f];
+			for (int i = 0; i < this.size; i++)
+				scores[i] += w * col.get(i);
+		}
+		return scores;
+	}
+
+	/**
+	 * copies a row into an instance of the given dataset, features first, then
+	 * the (missing) class
+	 */
+	public Instance toInstance(int pair, Instances dataset, Instance reuse) {
+		Instance inst = reuse;
+		if (inst == null) {
+			inst = new DenseInstance(dataset.numAttributes());
+			inst.setDataset(dataset);
+		}
+		for (int f = 0; f < this.columns.length; f++)
+			inst.setValue(f, this.columns[f].get(pair));
+		inst.setClassMissing();
+		return inst;
+	}
+
+}
@@ -1,11 +1,17 @@
 package grouping.clf.sim;
 
+import java.util.Collection;
+
 import model.Concept;
 
 public abstract class ConceptSimilarityMeasure {
 
 	abstract public double computeSimilarity(Concept c1, Concept c2);
 
+	// called once with all concepts before pairs of them are compared
+	public void prepare(Collection<Concept> concepts) {
+	}
+
 	public String getName() {
 		return this.getClass().getSimpleName();
 	}
@@ -16,12 +16,13 @@ import opennlp.tools.tokenize.Tokenizer;
 
 public class JaccardDistance extends ConceptSimilarityMeasure {
 
-	private Stemmer stemmer;
+	// snowball stemmers keep state, one per thread
+	private ThreadLocal<Stemmer> stemmer;
 	private Set<String> functionWords;
 
 	public JaccardDistance() {
 		super();
-		this.stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
+		this.stemmer = ThreadLocal.withInitial(() -> new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH));
 		this.functionWords = this
 				.loadFunctionWords(getClass().getClassLoader().getResource("lists/functionwords_en.txt"));
 	}
@@ -49,9 +50,10 @@ public class JaccardDistance extends ConceptSimilarityMeasure {
 	protected Set<String> stem(Concept c) {
 		Set<String> stems = new HashSet<String>();
 		Tokenizer tok = SimpleTokenizer.INSTANCE;
+		Stemmer stemmer = this.stemmer.get();
 		for (String word : tok.tokenize(c.name.toLowerCase().trim())) {
 			if (!this.functionWords.contains(word))
-				stems.add((String) this.stemmer.stem(word));
+				stems.add((String) stemmer.stem(word));
 		}
 		return stems;
 	}
@@ -0,0 +1,49 @@
+package grouping.clf.sim;
+
+import java.util.function.Supplier;
+
+import semilar.data.Word;
+import semilar.wordmetrics.AbstractWordMetric;
+
+/**
+ * Word metric that memoizes word pair similarities for all threads
+ * 
+ * The underlying metric is created once per thread by the given factory, so
+ * metrics that are not thread-safe can be used concurrently. Values computed by
+ * one thread are reused by all others, pairs are identified by lemma and POS.
+ */
+public class MemoWordMetric extends AbstractWordMetric {
+
+	private ThreadLocal<AbstractWordMetric> metric;
+	private WordPairCache cache;
+
+	public MemoWordMetric(Supplier<? extends AbstractWordMetric> factory, WordPairCache cache) {
+		this.metric = ThreadLocal.withInitial(factory);
+		this.cache = cache;
+	}
+
+	public double computeWordSimilarity(Word word1, Word word2) {
+		long key = WordPairCache.key(word1.getBaseForm(), word1.getPos(), word2.getBaseForm(), word2.getPos(), true);
+		float sim = this.cache.get(key);
+		if (Float.isNaN(sim)) {
+			sim = (float) this.metric.get().computeWordSimilarity(word1, word2);
+			this.cache.put(key, sim);
+		}
+		return sim;
+	}
+
+	public double computeWordSimilarityNoPos(Word word1, Word word2) {
+		long key = WordPairCache.key(word1.getBaseForm(), null, word2.getBaseForm(), null, false);
+		float sim = this.cache.get(key);
+		if (Float.isNaN(sim)) {
+			sim = (float) this.metric.get().computeWordSimilarityNoPos(word1, word2);
+			this.cache.put(key, sim);
+		}
+		return sim;
+	}
+
+	public WordPairCache getCache() {
+		return this.cache;
+	}
+
+}
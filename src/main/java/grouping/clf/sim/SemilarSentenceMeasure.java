@@ -1,11 +1,14 @@
 package grouping.clf.sim;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import model.Concept;
 import preprocessing.NonUIMAPreprocessor;
 import semilar.config.ConfigManager;
+import semilar.data.Sentence;
 import semilar.sentencemetrics.AbstractComparer;
 import semilar.sentencemetrics.CorleyMihalceaComparer;
 import semilar.sentencemetrics.LSAComparer;
@@ -14,6 +17,7 @@ import semilar.sentencemetrics.LexicalOverlapComparer;
 public class SemilarSentenceMeasure extends ConceptSimilarityMeasure {
 
 	private AbstractComparer comp;
+	private Map<Concept, Sentence> sentences;
 
 	public SemilarSentenceMeasure(AbstractComparer comp) {
 		this.comp = comp;
@@ -27,8 +31,7 @@ public class SemilarSentenceMeasure extends ConceptSimilarityMeasure {
 	@Override
 	public double computeSimilarity(Concept c1, Concept c2) {
 
-		NonUIMAPreprocessor prep = NonUIMAPreprocessor.getInstance();
-		double sim = this.comp.computeSimilarity(prep.getSemilarSentence(c1), prep.getSemilarSentence(c2));
+		double sim = this.comp.computeSimilarity(this.getSentence(c1), this.getSentence(c2));
 
 		if (sim < 0 || sim > 1 || Double.isNaN(sim) || sim == Double.POSITIVE_INFINITY)
 			System.err.println(this.getName() + ": " + sim);
@@ -36,6 +39,22 @@ public class SemilarSentenceMeasure extends ConceptSimilarityMeasure {
 		return sim;
 	}
 
+	/**
+	 * builds the Semilar sentences of all concepts of the current run once,
+	 * instead of twice per compared pair
+	 */
+	@Override
+	public void prepare(Collection<Concept> concepts) {
+		this.sentences = NonUIMAPreprocessor.getInstance().getSemilarSentences(concepts);
+	}
+
+	private Sentence getSentence(Concept c) {
+		Sentence sentence = this.sentences != null ? this.sentences.get(c) : null;
+		if (sentence == null)
+			sentence = NonUIMAPreprocessor.getInstance().getSemilarSentence(c);
+		return sentence;
+	}
+
 	public static List<SemilarSentenceMeasure> getAll() {
 		List<SemilarSentenceMeasure> all = new ArrayList<SemilarSentenceMeasure>();
 		all.add(new SemilarSentenceMeasure(new LexicalOverlapComparer(true)));
@@ -0,0 +1,316 @@
+package grouping.clf.sim;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Persistent similarity values of label pairs in a memory-mapped hash table
+ * 
+ * Keys are 64-bit hashes of the normalized (lowercased, trimmed) labels, in
+ * either order. The file is a header followed by open addressing slots of key
+ * and value, so opening it only maps the file (in chunks, so it can grow
+ * beyond 2GB). Lookups can run concurrently, values are only added under a
+ * write lock that lookups validate against. When the table gets too full, it
+ * is rehashed into a new file that replaces the old one. There is one instance
+ * per file in the JVM, shared by all users until the last one closes it. Only
+ * one writing JVM per file is supported, nothing coordinates writes of
+ * different processes.
+ */
+public class SimilarityStore implements Closeable {
+
+	private static final long MAGIC = 0x53494d53544f5232L; // SIMSTOR2
+	private static final int HEADER = 32;
+	private static final int SLOT = 16;
+	private static final int INITIAL_CAPACITY = 1 << 16;
+	private static final int MAX_CAPACITY = 1 << 30;
+	private static final int CHUNK_BITS = 30;
+	private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+	private static Map<String, SimilarityStore> opened = new HashMap<String, SimilarityStore>();
+
+	private String path;
+	private File file;
+	private boolean writable;
+	private boolean full;
+	private volatile Table table;
+	private int size;
+	private int users;
+	private final StampedLock lock = new StampedLock();
+
+	private SimilarityStore(String path, File file) {
+		this.path = path;
+		this.file = file;
+	}
+
+	/**
+	 * opens the store, a missing file is created if writable and treated as
+	 * empty otherwise. Every open has to be followed by a close.
+	 */
+	public static SimilarityStore open(String fileName, boolean writable) throws IOException {
+		File file = new File(fileName);
+		String path = file.getCanonicalPath();
+		synchronized (opened) {
+			SimilarityStore store = opened.get(path);
+			if (store == null)
+				store = new SimilarityStore(path, file);
+			synchronized (store) {
+				if (store.users == 0 || (writable && !store.writable)) {
+					if (file.exists())
+						store.map(writable || store.writable);
+					else if (writable)
+						store.create();
+				}
+				store.users++;
+			}
+			opened.put(path, store);
+			return store;
+		}
+	}
+
+	/**
+	 * @return similarity or NaN if not stored
+	 */
+	public double get(String label1, String label2) {
+		long key = key(label1, label2);
+		long stamp = this.lock.tryOptimisticRead();
+		double sim = this.probe(key);
+		if (!this.lock.validate(stamp)) {
+			stamp = this.lock.readLock();
+			try {
+				sim = this.probe(key);
+			} finally {
+				this.lock.unlockRead(stamp);
+			}
+		}
+		return sim;
+	}
+
+	// may see a concurrent insert partially, callers validate against the lock
+	private double probe(long key) {
+		Table table = this.table;
+		if (table == null)
+			return Double.NaN;
+		for (int slot = index(key, table.capacity);; slot = (slot + 1) & (table.capacity - 1)) {
+			long pos = HEADER + (long) slot * SLOT;
+			long k = table.getLong(pos);
+			if (k == 0)
+				return Double.NaN;
+			if (k == key)
+				return table.getDouble(pos + 8);
+		}
+	}
+
+	/**
+	 * stores the similarity, ignored if the store could not grow anymore
+	 */
+	public synchronized void put(String label1, String label2, double sim) {
+		if (!this.writable)
+			throw new IllegalStateException("store is read-only: " + this.file);
+		Table table = this.table;
+		if (table == null || this.full)
+			return;
+		long key = key(label1, label2);
+		long stamp = this.lock.writeLock();
+		try {
+			if (2L * (this.size + 1) > table.capacity) {
+				table = this.rehash(table);
+				if (table == null)
+					return;
+			}
+			if (this.insert(table, key, sim)) {
+				this.size++;
+				table.putInt(12, this.size);
+			}
+		} finally {
+			this.lock.unlockWrite(stamp);
+		}
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public void close() {
+		synchronized (opened) {
+			synchronized (this) {
+				if (this.users == 0 || --this.users > 0)
+					return;
+				Table table = this.table;
+				if (table != null && this.writable)
+					table.force();
+				long stamp = this.lock.writeLock();
+				this.table = null;
+				this.lock.unlockWrite(stamp);
+				this.writable = false;
+				this.full = false;
+				opened.remove(this.path);
+			}
+		}
+	}
+
+	private boolean insert(Table table, long key, double sim) {
+		for (int slot = index(key, table.capacity);; slot = (slot + 1) & (table.capacity - 1)) {
+			long pos = HEADER + (long) slot * SLOT;
+			long k = table.getLong(pos);
+			if (k == key) {
+				table.putDouble(pos + 8, sim);
+				return false;
+			}
+			if (k == 0) {
+				table.putDouble(pos + 8, sim);
+				table.putLong(pos, key);
+				return true;
+			}
+		}
+	}
+
+	// the old mapping stays valid for concurrent readers after the move
+	private Table rehash(Table old) {
+		File tmp = new File(this.file.getPath() + "." + UUID.randomUUID() + ".tmp");
+		try {
+			if (old.capacity >= MAX_CAPACITY)
+				throw new IOException("maximum capacity reached");
+			Table table = allocate(tmp, 2 * old.capacity);
+			for (int slot = 0; slot < old.capacity; slot++) {
+				long pos = HEADER + (long) slot * SLOT;
+				long k = old.getLong(pos);
+				if (k != 0)
+					this.insert(table, k, old.getDouble(pos + 8));
+			}
+			table.putInt(12, this.size);
+			table.force();
+			Files.move(tmp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			this.table = table;
+			return table;
+		} catch (IOException | RuntimeException e) {
+			System.err.println("cannot grow similarity store " + this.file + ", no more values are stored");
+			e.printStackTrace();
+			tmp.delete();
+			this.full = true;
+			return null;
+		}
+	}
+
+	private void create() throws IOException {
+		if (this.file.getAbsoluteFile().getParentFile() != null)
+			this.file.getAbsoluteFile().getParentFile().mkdirs();
+		this.table = allocate(this.file, INITIAL_CAPACITY);
+		this.size = 0;
+		this.writable = true;
+	}
+
+	// only used for new, empty files
+	private static Table allocate(File file, int capacity) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(HEADER + (long) capacity * SLOT);
+			Table table = new Table(raf.getChannel(), MapMode.READ_WRITE, raf.length(), capacity);
+			table.putLong(0, MAGIC);
+			table.putInt(8, capacity);
+			table.putInt(12, 0);
+			return table;
+		}
+	}
+
+	private void map(boolean writable) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(this.file, writable ? "rw" : "r")) {
+			if (raf.length() < HEADER)
+				throw new IOException("not a similarity store: " + this.file);
+			MapMode mode = writable ? MapMode.READ_WRITE : MapMode.READ_ONLY;
+			MappedByteBuffer header = raf.getChannel().map(MapMode.READ_ONLY, 0, HEADER);
+			int capacity = header.getInt(8);
+			if (header.getLong(0) != MAGIC || raf.length() != HEADER + (long) capacity * SLOT)
+				throw new IOException("not a similarity store: " + this.file);
+			Table table = new Table(raf.getChannel(), mode, raf.length(), capacity);
+			this.size = table.getInt(12);
+			this.table = table;
+			this.writable = writable;
+		}
+	}
+
+	private static int index(long key, int capacity) {
+		return (int) (key ^ (key >>> 32)) & (capacity - 1);
+	}
+
+	// order independent 64-bit hash of the normalized labels, never 0
+	private static long key(String label1, String label2) {
+		String a = label1.toLowerCase().trim();
+		String b = label2.toLowerCase().trim();
+		if (a.compareTo(b) > 0) {
+			String t = a;
+			a = b;
+			b = t;
+		}
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < a.length(); i++)
+			h = (h ^ a.charAt(i)) * 0x100000001b3L;
+		h = (h ^ 0xffff) * 0x100000001b3L;
+		for (int i = 0; i < b.length(); i++)
+			h = (h ^ b.charAt(i)) * 0x100000001b3L;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return h == 0 ? 1 : h;
+	}
+
+	/**
+	 * file mapped in chunks of 1GB, slots never cross chunks as the header is
+	 * a multiple of the slot size
+	 */
+	private static class Table {
+
+		private final MappedByteBuffer[] chunks;
+		private final int capacity;
+
+		private Table(FileChannel channel, MapMode mode, long length, int capacity) throws IOException {
+			this.capacity = capacity;
+			this.chunks = new MappedByteBuffer[(int) ((length + CHUNK_MASK) >>> CHUNK_BITS)];
+			for (int i = 0; i < this.chunks.length; i++) {
+				long start = (long) i << CHUNK_BITS;
+				this.chunks[i] = channel.map(mode, start, Math.min(length - start, 1L << CHUNK_BITS));
+			}
+		}
+
+		private long getLong(long pos) {
+			return this.chunks[(int) (pos >>> CHUNK_BITS)].getLong((int) (pos & CHUNK_MASK));
+		}
+
+		private double getDouble(long pos) {
+			return this.chunks[(int) (pos >>> CHUNK_BITS)].getDouble((int) (pos & CHUNK_MASK));
+		}
+
+		private int getInt(long pos) {
+			return this.chunks[(int) (pos >>> CHUNK_BITS)].getInt((int) (pos & CHUNK_MASK));
+		}
+
+		private void putLong(long pos, long value) {
+			this.chunks[(int) (pos >>> CHUNK_BITS)].putLong((int) (pos & CHUNK_MASK), value);
+		}
+
+		private void putDouble(long pos, double value) {
+			this.chunks[(int) (pos >>> CHUNK_BITS)].putDouble((int) (pos & CHUNK_MASK), value);
+		}
+
+		private void putInt(long pos, int value) {
+			this.chunks[(int) (pos >>> CHUNK_BITS)].putInt((int) (pos & CHUNK_MASK), value);
+		}
+
+		private void force() {
+			for (MappedByteBuffer chunk : this.chunks)
+				chunk.force();
+		}
+	}
+
+}
@@ -2,36 +2,61 @@ package grouping.clf.sim;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 
 import model.Concept;
 import preprocessing.NonUIMAPreprocessor;
 import semilar.config.ConfigManager;
+import semilar.data.Sentence;
+import semilar.data.Word;
 import semilar.sentencemetrics.AbstractComparer;
 import semilar.sentencemetrics.OptimumComparer;
 import semilar.sentencemetrics.PairwiseComparer.NormalizeType;
 import semilar.sentencemetrics.PairwiseComparer.WordWeightType;
 import semilar.tools.semantic.WordNetSimilarity;
 import semilar.tools.semantic.WordNetSimilarity.WNSimMeasure;
+import semilar.wordmetrics.AbstractWordMetric;
 import semilar.wordmetrics.LSAWordMetric;
 import semilar.wordmetrics.WNWordMetric;
 
+/**
+ * Optimal alignment of words of both concepts using a word metric
+ * 
+ * Thread-safe: each thread uses its own comparer and word metric, word pair
+ * similarities are cached for all of them. The cache of a measure is shared by
+ * all instances and can be saved to be reused in later runs.
+ */
 public class WordBasedMeasure extends ConceptSimilarityMeasure {
 
-	private AbstractComparer comp;
+	private static String wordCacheFolder = "data/grouping/cache/words";
+	private static int wordCacheSize = 1 << 22;
+	private static Map<String, WordPairCache> wordCaches = new HashMap<String, WordPairCache>();
+
+	private ThreadLocal<AbstractComparer> comp;
+	private MemoWordMetric wordMetric;
 	private String name;
+	private Map<Concept, Sentence> sentences;
 
 	public WordBasedMeasure(WordNetSimilarity.WNSimMeasure wordSim) {
-		WNWordMetric wordMetric = new WNWordMetric(wordSim, false);
-		this.name = "WN-based " + wordSim;
-		this.comp = new OptimumComparer(wordMetric, 0.3f, false, WordWeightType.NONE, NormalizeType.AVERAGE);
+		this("WN-based " + wordSim, () -> new WNWordMetric(wordSim, false));
 	}
 
+	// the LSA model is loaded once, lookups in it are synchronized
 	public WordBasedMeasure(LSAWordMetric lsa) {
-		this.name = "word-based LSA";
-		this.comp = new OptimumComparer(lsa, 0.3f, false, WordWeightType.NONE, NormalizeType.AVERAGE);
+		this("word-based LSA", () -> new SynchronizedWordMetric(lsa));
+	}
+
+	private WordBasedMeasure(String name, Supplier<? extends AbstractWordMetric> factory) {
+		this.name = name;
+		this.wordMetric = new MemoWordMetric(factory, getWordCache(name));
+		this.comp = ThreadLocal.withInitial(() -> new OptimumComparer(this.wordMetric, 0.3f, false,
+				WordWeightType.NONE, NormalizeType.AVERAGE));
 	}
 
 	@Override
@@ -39,17 +64,56 @@ public class WordBasedMeasure extends ConceptSimilarityMeasure {
 		return name;
 	}
 
+	private static WordPairCache getWordCache(String name) {
+		synchronized (wordCaches) {
+			WordPairCache cache = wordCaches.get(name);
+			if (cache == null) {
+				cache = new WordPairCache(wordCacheSize);
+				cache.load(wordCacheFolder + "/" + name + ".words");
+				wordCaches.put(name, cache);
+			}
+			return cache;
+		}
+	}
+
+	public WordPairCache getWordCache() {
+		return this.wordMetric.getCache();
+	}
+
+	// all caches loaded in this run
+	public static void saveWordCaches() {
+		synchronized (wordCaches) {
+			for (Map.Entry<String, WordPairCache> e : wordCaches.entrySet())
+				e.getValue().save(wordCacheFolder + "/" + e.getKey() + ".words");
+		}
+	}
+
 	@Override
 	public double computeSimilarity(Concept c1, Concept c2) {
 		if (c1.name.toLowerCase().equals(c2.name.toLowerCase()))
 			return 1;
 
-		NonUIMAPreprocessor prep = NonUIMAPreprocessor.getInstance();
-		double sim = this.comp.computeSimilarity(prep.getSemilarSentence(c1), prep.getSemilarSentence(c2));
+		double sim = this.comp.get().computeSimilarity(this.getSentence(c1), this.getSentence(c2));
 
 		return sim;
 	}
 
+	/**
+	 * builds the Semilar sentences of all concepts of the current run once,
+	 * instead of twice per compared pair
+	 */
+	@Override
+	public void prepare(Collection<Concept> concepts) {
+		this.sentences = NonUIMAPreprocessor.getInstance().getSemilarSentences(concepts);
+	}
+
+	private Sentence getSentence(Concept c) {
+		Sentence sentence = this.sentences != null ? this.sentences.get(c) : null;
+		if (sentence == null)
+			sentence = NonUIMAPreprocessor.getInstance().getSemilarSentence(c);
+		return sentence;
+	}
+
 	public static List<WordBasedMeasure> getAll() {
 		List<WordBasedMeasure> all = new ArrayList<WordBasedMeasure>();
 
@@ -68,4 +132,25 @@ public class WordBasedMeasure extends ConceptSimilarityMeasure {
 		return all;
 	}
 
+	private static class SynchronizedWordMetric extends AbstractWordMetric {
+
+		private AbstractWordMetric metric;
+
+		public SynchronizedWordMetric(AbstractWordMetric metric) {
+			this.metric = metric;
+		}
+
+		public double computeWordSimilarity(Word word1, Word word2) {
+			synchronized (this.metric) {
+				return this.metric.computeWordSimilarity(word1, word2);
+			}
+		}
+
+		public double computeWordSimilarityNoPos(Word word1, Word word2) {
+			synchronized (this.metric) {
+				return this.metric.computeWordSimilarityNoPos(word1, word2);
+			}
+		}
+	}
+
 }
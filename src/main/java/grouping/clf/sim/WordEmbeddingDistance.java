@@ -2,15 +2,19 @@ package grouping.clf.sim;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
 import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
-import org.nd4j.linalg.ops.transforms.Transforms;
+
+import com.carrotsearch.hppc.ObjectIntHashMap;
+import com.carrotsearch.hppc.ObjectIntMap;
 
 import model.Concept;
 import opennlp.tools.tokenize.SimpleTokenizer;
@@ -21,19 +25,31 @@ public class WordEmbeddingDistance extends ConceptSimilarityMeasure {
 	private static String word2vecFile = "C:\\Data\\embeddings\\GoogleNews-vectors-negative300.bin.gz";
 	private static String gloveFile = "";
 
-	private static EmbeddingType type;
-	private static int dimension;
-	private static WordVectors wordVectors;
-	private static INDArray unkVector;
+	// converted files (see WordVectorStore), used instead of the above if they exist
+	private static String word2vecStoreFile = "C:\\Data\\embeddings\\GoogleNews-vectors-negative300.vec";
+	private static String gloveStoreFile = "";
+
+	// loaded models are shared by all instances (and threads), keyed by type and dimension
+	private static Map<String, WordVectors> loadedVectors = new HashMap<String, WordVectors>();
+	private static Map<String, WordVectorStore> loadedStores = new HashMap<String, WordVectorStore>();
+	private static Map<String, float[]> loadedUnkVectors = new HashMap<String, float[]>();
+
+	private EmbeddingType type;
+	private int dimension;
+	private WordVectors wordVectors;
+	private WordVectorStore store;
+	private float[] unkVector;
+
+	// normalized concept vectors from prepare, one row per concept
+	private ObjectIntMap<Concept> rows;
+	private float[] matrix;
+	private int rowLength;
 
 	public WordEmbeddingDistance(EmbeddingType typ, int dim, boolean lazy) {
-		type = typ;
-		dimension = dim;
-		if (!lazy && wordVectors == null) {
+		this.type = typ;
+		this.dimension = dim;
+		if (!lazy)
 			this.loadWordVectors(type, dimension);
-			int[] shape = wordVectors.lookupTable().getWeights().shape();
-			System.out.println("word embeddings loaded, " + shape[0] + " " + shape[1]);
-		}
 	}
 
 	@Override
@@ -46,18 +62,25 @@ public class WordEmbeddingDistance extends ConceptSimilarityMeasure {
 		if (c1.name.toLowerCase().equals(c2.name.toLowerCase()))
 			return 1;
 
-		if (wordVectors == null) {
+		// cosine = dot product of normalized vectors
+		if (this.rows != null && this.rows.containsKey(c1) && this.rows.containsKey(c2))
+			return this.dot(this.rows.get(c1), this.rows.get(c2));
+
+		if (unkVector == null)
 			this.loadWordVectors(type, dimension);
-			int[] shape = wordVectors.lookupTable().getWeights().shape();
-			System.out.println("word embeddings loaded, " + shape[0] + " " + shape[1]);
-		}
 
-		INDArray cVector1 = this.getConceptVector(c1);
-		INDArray cVector2 = this.getConceptVector(c2);
+		float[] cVector1 = this.getVector(c1);
+		float[] cVector2 = this.getVector(c2);
 		if (cVector1 == null || cVector2 == null)
 			return Double.NaN;
 
-		double dist = Transforms.cosineSim(cVector1, cVector2);
+		double dot = 0, norm1 = 0, norm2 = 0;
+		for (int d = 0; d < cVector1.length; d++) {
+			dot += cVector1[d] * cVector2[d];
+			norm1 += cVector1[d] * cVector1[d];
+			norm2 += cVector2[d] * cVector2[d];
+		}
+		double dist = dot / Math.sqrt(norm1 * norm2);
 
 		if (Double.isNaN(dist))
 			System.err.println("Embedding NaN");
@@ -65,28 +88,88 @@ public class WordEmbeddingDistance extends ConceptSimilarityMeasure {
 		return dist;
 	}
 
+	/**
+	 * computes the vector of each concept once, normalized and stored in one
+	 * contiguous matrix, concepts without known words get NaN
+	 */
+	@Override
+	public void prepare(Collection<Concept> concepts) {
+
+		if (unkVector == null)
+			this.loadWordVectors(type, dimension);
+
+		this.rowLength = this.unkVector.length;
+		this.rows = new ObjectIntHashMap<Concept>(concepts.size());
+		this.matrix = new float[concepts.size() * this.rowLength];
+		int row = 0;
+		for (Concept c : concepts) {
+			if (this.rows.containsKey(c))
+				continue;
+			int offset = row * this.rowLength;
+			float[] vector = this.getVector(c);
+			if (vector == null) {
+				this.matrix[offset] = Float.NaN;
+			} else {
+				double norm = 0;
+				for (int d = 0; d < this.rowLength; d++)
+					norm += vector[d] * vector[d];
+				norm = Math.sqrt(norm);
+				for (int d = 0; d < this.rowLength; d++)
+					this.matrix[offset + d] = (float) (vector[d] / norm);
+			}
+			this.rows.put(c, row++);
+		}
+	}
+
+	private double dot(int row1, int row2) {
+		int o1 = row1 * this.rowLength;
+		int o2 = row2 * this.rowLength;
+		float sum = 0;
+		for (int d = 0; d < this.rowLength; d++)
+			sum += this.matrix[o1 + d] * this.matrix[o2 + d];
+		return sum;
+	}
+
 	public INDArray getConceptVector(Concept c) {
+		if (unkVector == null)
+			this.loadWordVectors(type, dimension);
+		float[] vector = this.getVector(c);
+		return vector == null ? null : Nd4j.create(vector);
+	}
+
+	private float[] getVector(Concept c) {
 
 		Tokenizer tok = SimpleTokenizer.INSTANCE;
 
-		List<INDArray> vectors = new ArrayList<INDArray>();
+		float[] sum = new float[this.unkVector.length];
+		int count = 0;
 		int countUnk = 0;
 		for (String word : tok.tokenize(c.name.toLowerCase().trim())) {
-			if (wordVectors.hasWord(word))
-				vectors.add(wordVectors.getWordVectorMatrix(word));
-			else {
-				vectors.add(unkVector);
+			float[] vector = this.getWordVector(word);
+			if (vector == null) {
+				vector = unkVector;
 				countUnk++;
 			}
+			for (int d = 0; d < sum.length; d++)
+				sum[d] += vector[d];
+			count++;
 		}
-		if (vectors.size() == countUnk)
+		if (count == countUnk)
 			return null; // all tokens unknown
-		INDArray allVectors = Nd4j.vstack(vectors);
 
 		// sum or mean is irrelevant for cosine similarity
-		INDArray conceptVector = allVectors.mean(0);
+		for (int d = 0; d < sum.length; d++)
+			sum[d] /= count;
+
+		return sum;
+	}
 
-		return conceptVector;
+	private float[] getWordVector(String word) {
+		if (store != null)
+			return store.getVector(word);
+		if (wordVectors.hasWord(word))
+			return wordVectors.getWordVectorMatrix(word).data().asFloat();
+		return null;
 	}
 
 	public EmbeddingType getType() {
@@ -99,20 +182,44 @@ public class WordEmbeddingDistance extends ConceptSimilarityMeasure {
 
 	private void loadWordVectors(EmbeddingType type, int dimension) {
 
-		if (type == EmbeddingType.WORD2VEC) {
-			File file = new File(word2vecFile);
-			wordVectors = WordVectorSerializer.readWord2VecModel(file);
-			dimension = 300;
-		} else {
-			File file = new File(gloveFile.replace("$dim$", dimension + ""));
-			try {
-				wordVectors = WordVectorSerializer.loadTxtVectors(file);
-			} catch (FileNotFoundException | UnsupportedEncodingException e) {
-				e.printStackTrace();
+		String key = type + " " + dimension;
+		synchronized (loadedVectors) {
+			String storeFile = type == EmbeddingType.WORD2VEC ? word2vecStoreFile
+					: gloveStoreFile.replace("$dim$", dimension + "");
+			if (!loadedUnkVectors.containsKey(key) && new File(storeFile).exists()) {
+				try {
+					WordVectorStore vectors = new WordVectorStore(storeFile);
+					System.out.println("word embeddings mapped, " + vectors.size() + " " + vectors.getDimension());
+					loadedStores.put(key, vectors);
+					loadedUnkVectors.put(key, vectors.getUnkVector());
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+			if (!loadedUnkVectors.containsKey(key)) {
+
+				WordVectors vectors = null;
+				if (type == EmbeddingType.WORD2VEC) {
+					File file = new File(word2vecFile);
+					vectors = WordVectorSerializer.readWord2VecModel(file);
+				} else {
+					File file = new File(gloveFile.replace("$dim$", dimension + ""));
+					try {
+						vectors = WordVectorSerializer.loadTxtVectors(file);
+					} catch (FileNotFoundException | UnsupportedEncodingException e) {
+						e.printStackTrace();
+					}
+				}
+
+				int[] shape = vectors.lookupTable().getWeights().shape();
+				System.out.println("word embeddings loaded, " + shape[0] + " " + shape[1]);
+				loadedVectors.put(key, vectors);
+				loadedUnkVectors.put(key, vectors.lookupTable().getWeights().mean(0).data().asFloat());
 			}
+			this.wordVectors = loadedVectors.get(key);
+			this.store = loadedStores.get(key);
+			this.unkVector = loadedUnkVectors.get(key);
 		}
-
-		unkVector = wordVectors.lookupTable().getWeights().mean(0);
 	}
 
 	public enum EmbeddingType {
@@ -0,0 +1,209 @@
+package grouping.clf.sim;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.carrotsearch.hppc.LongFloatHashMap;
+import com.carrotsearch.hppc.cursors.LongFloatCursor;
+
+/**
+ * Bounded word pair similarity cache shared by threads
+ * 
+ * Keys are 64-bit hashes of lemma and POS of both words, values are floats.
+ * The cache is split into segments with their own lock. Each segment has a
+ * current and a previous generation, when the current one is full it becomes
+ * the previous one and the old previous one is dropped. Entries found in the
+ * previous generation are moved to the current one, so frequently used pairs
+ * survive. Can be saved to and loaded from a file.
+ */
+public class WordPairCache {
+
+	private static final long MAGIC = 0x5744504149523031L; // WDPAIR01
+	private static final int SEGMENTS = 64;
+
+	private Segment[] segments;
+	private int segmentSize;
+
+	private LongAdder hits = new LongAdder();
+	private LongAdder misses = new LongAdder();
+
+	// maxSize is the number of entries in current generations
+	public WordPairCache(int maxSize) {
+		this.segmentSize = Math.max(16, maxSize / SEGMENTS);
+		this.segments = new Segment[SEGMENTS];
+		for (int i = 0; i < SEGMENTS; i++)
+			this.segments[i] = new Segment();
+	}
+
+	/**
+	 * @return similarity or NaN if not cached
+	 */
+	public float get(long key) {
+		Segment s = this.segment(key);
+		float sim;
+		synchronized (s) {
+			sim = s.get(key);
+		}
+		if (Float.isNaN(sim))
+			this.misses.increment();
+		else
+			this.hits.increment();
+		return sim;
+	}
+
+	public void put(long key, float sim) {
+		Segment s = this.segment(key);
+		synchronized (s) {
+			s.put(key, sim);
+		}
+	}
+
+	public int size() {
+		int size = 0;
+		for (Segment s : this.segments) {
+			synchronized (s) {
+				size += s.current.size() + s.previous.size();
+			}
+		}
+		return size;
+	}
+
+	public double getHitRate() {
+		long h = this.hits.sum();
+		long total = h + this.misses.sum();
+		return total == 0 ? 0 : h / (double) total;
+	}
+
+	public String getStats() {
+		return "word pair cache: " + this.size() + " entries, " + this.hits.sum() + " hits, " + this.misses.sum()
+				+ " misses, hit rate " + String.format("%.3f", this.getHitRate());
+	}
+
+	// 64-bit hash of both words (in this order) and the metric variant
+	public static long key(String lemma1, String pos1, String lemma2, String pos2, boolean usePos) {
+		long h = 0xcbf29ce484222325L;
+		h = hash(h, lemma1);
+		if (usePos)
+			h = hash(h, pos1);
+		h = hash(h, lemma2);
+		if (usePos)
+			h = hash(h, pos2);
+		h = (h ^ (usePos ? 1 : 2)) * 0x100000001b3L;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private static long hash(long h, String s) {
+		if (s != null)
+			for (int i = 0; i < s.length(); i++)
+				h = (h ^ s.charAt(i)) * 0x100000001b3L;
+		return (h ^ 0xffff) * 0x100000001b3L;
+	}
+
+	private Segment segment(long key) {
+		return this.segments[(int) (key >>> 58) & (SEGMENTS - 1)];
+	}
+
+	public void load(String fileName) {
+		File file = new File(fileName);
+		if (!file.exists())
+			return;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+			if (in.readLong() != MAGIC)
+				throw new IOException("not a word pair cache: " + fileName);
+			int n = in.readInt();
+			for (int i = 0; i < n; i++)
+				this.put(in.readLong(), in.readFloat());
+		} catch (EOFException e) {
+			System.err.println("word pair cache truncated: " + fileName);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * written to a unique temporary file first, then moved, the number of
+	 * entries is filled in after writing them as they can change meanwhile
+	 */
+	public void save(String fileName) {
+		synchronized (WordPairCache.class) {
+			File file = new File(fileName);
+			File tmp = new File(fileName + "." + UUID.randomUUID() + ".tmp");
+			if (file.getParentFile() != null)
+				file.getParentFile().mkdirs();
+			try {
+				int n = 0;
+				try (DataOutputStream out = new DataOutputStream(
+						new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+					out.writeLong(MAGIC);
+					out.writeInt(0);
+					for (Segment s : this.segments) {
+						synchronized (s) {
+							// previous first, so current entries are kept when loading into a smaller cache
+							for (LongFloatCursor c : s.previous) {
+								out.writeLong(c.key);
+								out.writeFloat(c.value);
+							}
+							for (LongFloatCursor c : s.current) {
+								out.writeLong(c.key);
+								out.writeFloat(c.value);
+							}
+							n += s.previous.size() + s.current.size();
+						}
+					}
+				}
+				try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+					raf.seek(8);
+					raf.writeInt(n);
+				}
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				e.printStackTrace();
+				tmp.delete();
+			}
+		}
+	}
+
+	private class Segment {
+
+		private LongFloatHashMap current = new LongFloatHashMap();
+		private LongFloatHashMap previous = new LongFloatHashMap();
+
+		private float get(long key) {
+			int i = this.current.indexOf(key);
+			if (this.current.indexExists(i))
+				return this.current.indexGet(i);
+			i = this.previous.indexOf(key);
+			if (this.previous.indexExists(i)) {
+				float sim = this.previous.indexGet(i);
+				this.put(key, sim);
+				return sim;
+			}
+			return Float.NaN;
+		}
+
+		private void put(long key, float sim) {
+			if (this.current.size() >= segmentSize && !this.current.containsKey(key)) {
+				this.previous = this.current;
+				this.current = new LongFloatHashMap(segmentSize);
+			}
+			this.current.put(key, sim);
+		}
+	}
+
+}
@@ -0,0 +1,383 @@
+package grouping.clf.sim;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Word embeddings in a compact binary file that is memory-mapped, so only the
+ * vectors of words that are looked up are ever read
+ * 
+ * Layout (little endian): header, hash table of word ids, word offsets, UTF-8
+ * words, vectors as float32 or float16. The last vector is the mean of all
+ * vectors, used for unknown words. Files are created once with
+ * {@link #main(String[])} from word2vec (binary or text) or GloVe files.
+ */
+public class WordVectorStore {
+
+	private static final long MAGIC = 0x5745435354523031L; // WECSTR01
+	private static final int HEADER = 32;
+	private static final int CHUNK = 1 << 30;
+
+	private int numWords;
+	private int dim;
+	private int tableSize;
+	private boolean half;
+	private int rowBytes;
+	private int rowsPerChunk;
+
+	private MappedByteBuffer index;
+	private int offsetsStart;
+	private int wordsStart;
+	private MappedByteBuffer[] vectors;
+
+	public WordVectorStore(String fileName) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(fileName, "r")) {
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER).order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getLong(0) != MAGIC)
+				throw new IOException("not a word vector store: " + fileName);
+			this.numWords = header.getInt(8);
+			this.dim = header.getInt(12);
+			this.tableSize = header.getInt(16);
+			this.half = header.getInt(20) == 1;
+			long vectorStart = header.getLong(24);
+			this.rowBytes = this.dim * (this.half ? 2 : 4);
+			this.rowsPerChunk = CHUNK / this.rowBytes;
+
+			this.index = channel.map(MapMode.READ_ONLY, 0, vectorStart);
+			this.index.order(ByteOrder.LITTLE_ENDIAN);
+			this.offsetsStart = HEADER + 4 * this.tableSize;
+			this.wordsStart = this.offsetsStart + 4 * (this.numWords + 1);
+
+			int rows = this.numWords + 1;
+			this.vectors = new MappedByteBuffer[(rows + this.rowsPerChunk - 1) / this.rowsPerChunk];
+			for (int c = 0; c < this.vectors.length; c++) {
+				long start = vectorStart + (long) c * this.rowsPerChunk * this.rowBytes;
+				long length = (long) Math.min(this.rowsPerChunk, rows - c * this.rowsPerChunk) * this.rowBytes;
+				this.vectors[c] = channel.map(MapMode.READ_ONLY, start, length);
+				this.vectors[c].order(ByteOrder.LITTLE_ENDIAN);
+			}
+		}
+	}
+
+	public int size() {
+		return this.numWords;
+	}
+
+	public int getDimension() {
+		return this.dim;
+	}
+
+	public boolean hasWord(String word) {
+		return this.getId(word) >= 0;
+	}
+
+	// vector of the word, null if unknown
+	public float[] getVector(String word) {
+		int id = this.getId(word);
+		return id < 0 ? null : this.getRow(id);
+	}
+
+	// mean of all vectors
+	public float[] getUnkVector() {
+		return this.getRow(this.numWords);
+	}
+
+	private int getId(String word) {
+		byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+		int mask = this.tableSize - 1;
+		for (int slot = hash(bytes) & mask;; slot = (slot + 1) & mask) {
+			int id = this.index.getInt(HEADER + 4 * slot) - 1;
+			if (id < 0)
+				return -1;
+			int start = this.index.getInt(this.offsetsStart + 4 * id);
+			int end = this.index.getInt(this.offsetsStart + 4 * (id + 1));
+			if (end - start == bytes.length) {
+				boolean same = true;
+				for (int i = 0; i < bytes.length && same; i++)
+					same = this.index.get(this.wordsStart + start + i) == bytes[i];
+				if (same)
+					return id;
+			}
+		}
+	}
+
+	private float[] getRow(int id) {
+		ByteBuffer chunk = this.vectors[id / this.rowsPerChunk];
+		int pos = (id % this.rowsPerChunk) * this.rowBytes;
+		float[] v = new float[this.dim];
+		for (int d = 0; d < this.dim; d++)
+			v[d] = this.half ? toFloat(chunk.getShort(pos + 2 * d)) : chunk.getFloat(pos + 4 * d);
+		return v;
+	}
+
+	private static int hash(byte[] bytes) {
+		int h = 0x811c9dc5;
+		for (byte b : bytes)
+			h = (h ^ (b & 0xff)) * 0x01000193;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * converts embeddings into the store format
+	 * 
+	 * @param args
+	 *            input file (.bin or .bin.gz for binary word2vec, text
+	 *            otherwise), output file, optionally "half" for float16
+	 */
+	public static void main(String[] args) throws IOException {
+		convert(args[0], args[1], args.length > 2 && args[2].equals("half"));
+	}
+
+	public static void convert(String inputFile, String outputFile, boolean half) throws IOException {
+
+		System.out.println("converting " + inputFile);
+		long start = System.currentTimeMillis();
+
+		// vectors go to a temporary file first, words are collected
+		File tmp = new File(outputFile + ".tmp");
+		List<byte[]> words = new ArrayList<byte[]>();
+		double[] sum = null;
+		InputStream in = new BufferedInputStream(new FileInputStream(inputFile), 1 << 20);
+		if (inputFile.endsWith(".gz"))
+			in = new GZIPInputStream(in, 1 << 20);
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp), 1 << 20)) {
+			VectorReader reader = inputFile.endsWith(".bin") || inputFile.endsWith(".bin.gz")
+					? new BinaryReader(in) : new TextReader(in);
+			Set<String> seen = new HashSet<String>();
+			ByteBuffer row = null;
+			String word;
+			while ((word = reader.next()) != null) {
+				float[] v = reader.vector();
+				if (!seen.add(word))
+					continue;
+				if (sum == null) {
+					sum = new double[v.length];
+					row = ByteBuffer.allocate(v.length * (half ? 2 : 4)).order(ByteOrder.LITTLE_ENDIAN);
+				}
+				for (int d = 0; d < v.length; d++)
+					sum[d] += v[d];
+				writeRow(out, row, v, half);
+				words.add(word.getBytes(StandardCharsets.UTF_8));
+			}
+			float[] unk = new float[sum.length];
+			for (int d = 0; d < unk.length; d++)
+				unk[d] = (float) (sum[d] / words.size());
+			writeRow(out, row, unk, half);
+		} finally {
+			in.close();
+		}
+
+		// hash table, load factor <= 0.5
+		int tableSize = Integer.highestOneBit(Math.max(2, words.size() * 2 - 1)) << 1;
+		int[] table = new int[tableSize];
+		for (int id = 0; id < words.size(); id++) {
+			int slot = hash(words.get(id)) & (tableSize - 1);
+			while (table[slot] != 0)
+				slot = (slot + 1) & (tableSize - 1);
+			table[slot] = id + 1;
+		}
+		int wordBytes = 0;
+		for (byte[] w : words)
+			wordBytes += w.length;
+		long indexSize = HEADER + 4L * tableSize + 4L * (words.size() + 1) + wordBytes;
+		long vectorStart = (indexSize + 7) / 8 * 8;
+
+		try (FileOutputStream fos = new FileOutputStream(outputFile);
+				FileChannel vectorIn = new FileInputStream(tmp).getChannel()) {
+			OutputStream out = new BufferedOutputStream(fos, 1 << 20);
+			ByteBuffer buf = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+			buf.putLong(MAGIC).putInt(words.size()).putInt(sum.length).putInt(tableSize).putInt(half ? 1 : 0)
+					.putLong(vectorStart);
+			out.write(buf.array());
+			ByteBuffer i4 = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			for (int t : table)
+				out.write(i4.putInt(0, t).array());
+			int offset = 0;
+			for (byte[] w : words) {
+				out.write(i4.putInt(0, offset).array());
+				offset += w.length;
+			}
+			out.write(i4.putInt(0, offset).array());
+			for (byte[] w : words)
+				out.write(w);
+			for (long p = indexSize; p < vectorStart; p++)
+				out.write(0);
+			out.flush();
+			FileChannel channel = fos.getChannel();
+			long size = vectorIn.size();
+			for (long pos = 0; pos < size;)
+				pos += channel.transferFrom(vectorIn, vectorStart + pos, size - pos);
+		}
+		tmp.delete();
+
+		double duration = (System.currentTimeMillis() - start) / 1000.0;
+		System.out.println("words: " + words.size() + ", dimension: " + sum.length + ", " + duration + "s");
+	}
+
+	private static void writeRow(OutputStream out, ByteBuffer row, float[] v, boolean half) throws IOException {
+		row.clear();
+		for (float x : v) {
+			if (half)
+				row.putShort(toHalf(x));
+			else
+				row.putFloat(x);
+		}
+		out.write(row.array());
+	}
+
+	// IEEE 754 half precision, rounding to nearest
+	static short toHalf(float f) {
+		int bits = Float.floatToIntBits(f);
+		int sign = (bits >>> 16) & 0x8000;
+		int val = (bits & 0x7fffffff) + 0x1000;
+		if (val >= 0x47800000) {
+			if ((bits & 0x7fffffff) >= 0x47800000) {
+				if (val < 0x7f800000)
+					return (short) (sign | 0x7c00);
+				return (short) (sign | 0x7c00 | (bits & 0x007fffff) >>> 13);
+			}
+			return (short) (sign | 0x7bff);
+		}
+		if (val >= 0x38800000)
+			return (short) (sign | val - 0x38000000 >>> 13);
+		if (val < 0x33000000)
+			return (short) sign;
+		val = (bits & 0x7fffffff) >>> 23;
+		return (short) (sign | ((bits & 0x7fffff | 0x800000) + (0x800000 >>> val - 102) >>> 126 - val));
+	}
+
+	static float toFloat(short h) {
+		int bits = h & 0xffff;
+		int sign = (bits & 0x8000) << 16;
+		int exp = (bits >>> 10) & 0x1f;
+		int mant = bits & 0x3ff;
+		if (exp == 0) {
+			if (mant == 0)
+				return Float.intBitsToFloat(sign);
+			// subnormal
+			while ((mant & 0x400) == 0) {
+				mant <<= 1;
+				exp--;
+			}
+			exp++;
+			mant &= 0x3ff;
+		} else if (exp == 0x1f) {
+			return Float.intBitsToFloat(sign | 0x7f800000 | (mant << 13));
+		}
+		return Float.intBitsToFloat(sign | ((exp + 112) << 23) | (mant << 13));
+	}
+
+	private interface VectorReader {
+		String next() throws IOException;
+
+		float[] vector();
+	}
+
+	// word2vec binary: header line, then word, space and little endian floats
+	private static class BinaryReader implements VectorReader {
+
+		private DataInputStream in;
+		private int dim;
+		private byte[] bytes;
+		private float[] vector;
+
+		public BinaryReader(InputStream in) throws IOException {
+			this.in = new DataInputStream(in);
+			String[] header = this.readToken('\n').trim().split(" ");
+			this.dim = Integer.parseInt(header[1]);
+			this.bytes = new byte[4 * this.dim];
+			this.vector = new float[this.dim];
+		}
+
+		@Override
+		public String next() throws IOException {
+			String word;
+			try {
+				word = this.readToken(' ').trim();
+			} catch (EOFException e) {
+				return null;
+			}
+			if (word.isEmpty())
+				return null;
+			this.in.readFully(this.bytes);
+			ByteBuffer.wrap(this.bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(this.vector);
+			return word;
+		}
+
+		@Override
+		public float[] vector() {
+			return this.vector;
+		}
+
+		private String readToken(char end) throws IOException {
+			ByteArrayOutputStream token = new ByteArrayOutputStream();
+			int b;
+			while ((b = this.in.read()) != end) {
+				if (b < 0) {
+					if (token.size() == 0)
+						throw new EOFException();
+					break;
+				}
+				if (b != '\n' || end == '\n')
+					token.write(b);
+			}
+			return new String(token.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+
+	// word2vec text or GloVe: one word and its values per line
+	private static class TextReader implements VectorReader {
+
+		private BufferedReader in;
+		private float[] vector;
+
+		public TextReader(InputStream in) {
+			this.in = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public String next() throws IOException {
+			String line;
+			while ((line = this.in.readLine()) != null) {
+				String[] parts = line.trim().split(" ");
+				if (parts.length <= 2)
+					continue; // word2vec header
+				this.vector = new float[parts.length - 1];
+				for (int d = 0; d < this.vector.length; d++)
+					this.vector[d] = Float.parseFloat(parts[d + 1]);
+				return parts[0];
+			}
+			return null;
+		}
+
+		@Override
+		public float[] vector() {
+			return this.vector;
+		}
+	}
+
+}
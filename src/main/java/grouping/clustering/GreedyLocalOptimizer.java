@@ -1,13 +1,20 @@
 package grouping.clustering;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
+import com.carrotsearch.hppc.IntHashSet;
 import com.carrotsearch.hppc.ObjectDoubleMap;
+import com.carrotsearch.hppc.ObjectIntHashMap;
+import com.carrotsearch.hppc.ObjectIntMap;
 import com.carrotsearch.hppc.cursors.ObjectDoubleCursor;
 
 import model.CPair;
@@ -18,87 +25,135 @@ import util.UnionFind;
  * improves initial solution (connected components) by removing edges, trying
  * each edge after another and removing each that improves the objective
  * 
+ * The initial edges form a spanning forest, so removing one splits a cluster
+ * into two. The change of the objective only depends on pairs across the two
+ * parts and is computed from the smaller one, found by searching both parts
+ * simultaneously. Accepted removals relabel the smaller part, which keeps
+ * connectivity queries constant time.
+ * 
+ * With several threads, batches of candidate edges are evaluated concurrently
+ * and accepted in order. Evaluations of clusters changed earlier in the batch
+ * are repeated, so the result is the same as with one thread.
+ * 
  * @author falke
  *
  */
 public class GreedyLocalOptimizer extends AbstractConceptClusterer {
 
 	protected static final int MAX_ITER = 100000; // all
+	protected static final int BATCH_PER_THREAD = 64;
 	protected double posThreshold;
+	protected int threads;
 
-	protected CPair[] allPairs;
-	protected double[] predictions;
-	protected double fixedScore;
-	protected Set<Concept> singleConcepts;
-	protected Set<Concept> concepts;
+	protected Concept[] conceptArray;
+	protected ObjectIntMap<Concept> conceptIds;
 	protected Set<CPair> allEdges;
+	protected double fixedScore;
+
+	// forest: edges and incident edges per concept
+	protected int[] edgeSource;
+	protected int[] edgeTarget;
+	protected boolean[] removed;
+	protected int[] adjStart;
+	protected int[] adjEdge;
+
+	// pairs within initial clusters: other concept and score change if split
+	protected int[] pairStart;
+	protected int[] pairOther;
+	protected double[] pairDelta;
+
+	// cluster label per concept
+	protected int[] clusterIds;
+	protected int nextClusterId;
 
 	public GreedyLocalOptimizer() {
 		this(0.5);
 	}
 
 	public GreedyLocalOptimizer(double posThreshold) {
+		this(posThreshold, 1);
+	}
+
+	public GreedyLocalOptimizer(double posThreshold, int threads) {
 		this.posThreshold = posThreshold;
+		this.threads = threads;
 	}
 
 	@Override
 	public Set<List<Concept>> createClusters(Set<Concept> concepts, ObjectDoubleMap<CPair> predictions) {
 
-		this.concepts = concepts;
-
 		// initial solution
 		Set<CPair> allEdges = this.getPositivePairs(predictions, this.posThreshold);
 		this.allEdges = this.transReduction(concepts, allEdges);
 		System.out.println("branching factor " + this.allEdges.size());
 
-		Solution sol = new Solution();
-		Set<List<Concept>> clusters = this.buildCluster(sol);
-		this.precomputeScoring(predictions, clusters);
-
-		sol.score = this.scoreClustering(clusters);
-		System.out.println("init " + sol.score);
-
-		// local search
 		Random rand = new Random(42);
 		List<CPair> edges = new ArrayList<CPair>(this.allEdges);
 		Collections.shuffle(edges, rand);
 
-		for (int i = 0; i < edges.size(); i++) {
-			// find next edge to remove
-			Solution newSolution = null;
-			newSolution = buildNeighbour(sol, edges.get(i));
-			if (newSolution.score > sol.score) {
-				sol = newSolution;
-				edges.remove(i);
-				i--;
+		this.buildForest(concepts, edges);
+		double score = this.precomputeScoring(predictions);
+		System.out.println("init " + score);
+
+		// local search, first edge not evaluated yet
+		Search search = new Search();
+		int iterations = 0;
+		int next = 0;
+		if (this.threads > 1) {
+			ForkJoinPool pool = new ForkJoinPool(this.threads);
+			ThreadLocal<Search> searches = ThreadLocal.withInitial(Search::new);
+			int batchSize = BATCH_PER_THREAD * this.threads;
+			try {
+				while (next < this.edgeSource.length && iterations < MAX_ITER) {
+					int from = next;
+					int to = Math.min(next + batchSize, this.edgeSource.length);
+					Move[] moves;
+					try {
+						moves = pool.submit(() -> IntStream.range(from, to).parallel()
+								.mapToObj(e -> searches.get().evaluate(e)).toArray(Move[]::new)).get();
+					} catch (InterruptedException e) {
+						// remaining edges sequentially, gives the same result
+						Thread.currentThread().interrupt();
+						break;
+					} catch (ExecutionException e) {
+						throw new IllegalStateException("evaluating edges failed", e.getCause());
+					}
+					IntHashSet changed = new IntHashSet();
+					for (int k = 0; k < moves.length && iterations < MAX_ITER; k++) {
+						Move move = moves[k];
+						if (changed.contains(move.cluster))
+							move = search.evaluate(move.edge);
+						if (move.delta > 0) {
+							changed.add(move.cluster);
+							this.removeEdge(move);
+							score += move.delta;
+							iterations++;
+						}
+					}
+					next = to;
+				}
+			} finally {
+				pool.shutdown();
+			}
+		}
+		for (int e = next; e < this.edgeSource.length && iterations < MAX_ITER; e++) {
+			Move move = search.evaluate(e);
+			if (move.delta > 0) {
+				this.removeEdge(move);
+				score += move.delta;
+				iterations++;
 			}
-			if (sol.removedEdges.size() == MAX_ITER)
-				break;
 		}
 
 		// final solution
-		clusters = this.buildCluster(sol);
+		Set<List<Concept>> clusters = this.buildClusters();
 
-		System.out.println("iterations: " + sol.removedEdges.size() + ", best " + sol.score);
+		System.out.println("iterations: " + iterations + ", best " + score);
 
 		return clusters;
 
 	}
 
-	protected Solution buildNeighbour(Solution prevSolution, CPair edgeToRemove) {
-		Solution newSolution = new Solution(prevSolution, edgeToRemove);
-		Set<List<Concept>> clusters = this.buildCluster(newSolution);
-		newSolution.score = this.scoreClustering(clusters);
-		return newSolution;
-	}
-
-	protected Set<List<Concept>> buildCluster(Solution sol) {
-		Set<CPair> reducedEdges = new HashSet<CPair>(allEdges);
-		reducedEdges.removeAll(sol.removedEdges);
-		Set<List<Concept>> clusters = this.buildTransClosureClusters(concepts, reducedEdges);
-		return clusters;
-	}
-
 	protected Set<CPair> transReduction(Set<Concept> concepts, Set<CPair> pairs) {
 		Set<CPair> reduction = new HashSet<CPair>(pairs);
 		UnionFind<Concept> unionFind = new UnionFind<Concept>(concepts);
@@ -113,61 +168,209 @@ public class GreedyLocalOptimizer extends AbstractConceptClusterer {
 		return reduction;
 	}
 
-	// precompute objective function for pairs that will never change
-	// -> single concept clusters
-	protected void precomputeScoring(ObjectDoubleMap<CPair> predictions, Set<List<Concept>> clusters) {
+	// index concepts and edges, label initial clusters
+	protected void buildForest(Set<Concept> concepts, List<CPair> edges) {
+
+		int n = concepts.size();
+		this.conceptArray = concepts.toArray(new Concept[n]);
+		this.conceptIds = new ObjectIntHashMap<Concept>(n);
+		for (int i = 0; i < n; i++)
+			this.conceptIds.put(this.conceptArray[i], i);
 
-		this.singleConcepts = new HashSet<Concept>();
-		for (List<Concept> cluster : clusters)
-			if (cluster.size() == 1)
-				this.singleConcepts.add(cluster.get(0));
+		int m = edges.size();
+		this.edgeSource = new int[m];
+		this.edgeTarget = new int[m];
+		this.removed = new boolean[m];
+		this.adjStart = new int[n + 1];
+		for (int e = 0; e < m; e++) {
+			this.edgeSource[e] = this.conceptIds.get(edges.get(e).c1);
+			this.edgeTarget[e] = this.conceptIds.get(edges.get(e).c2);
+			this.adjStart[this.edgeSource[e] + 1]++;
+			this.adjStart[this.edgeTarget[e] + 1]++;
+		}
+		for (int i = 0; i < n; i++)
+			this.adjStart[i + 1] += this.adjStart[i];
+		this.adjEdge = new int[2 * m];
+		int[] fill = new int[n];
+		for (int e = 0; e < m; e++) {
+			int u = this.edgeSource[e];
+			int v = this.edgeTarget[e];
+			this.adjEdge[this.adjStart[u] + fill[u]++] = e;
+			this.adjEdge[this.adjStart[v] + fill[v]++] = e;
+		}
+
+		// connected components of the forest
+		this.clusterIds = new int[n];
+		this.nextClusterId = 0;
+		int[] queue = new int[n];
+		boolean[] seen = new boolean[n];
+		for (int first = 0; first < n; first++) {
+			if (seen[first])
+				continue;
+			int head = 0;
+			int tail = 0;
+			queue[tail++] = first;
+			seen[first] = true;
+			while (head < tail) {
+				int c = queue[head++];
+				this.clusterIds[c] = this.nextClusterId;
+				for (int k = this.adjStart[c]; k < this.adjStart[c + 1]; k++) {
+					int nb = this.other(this.adjEdge[k], c);
+					if (!seen[nb]) {
+						seen[nb] = true;
+						queue[tail++] = nb;
+					}
+				}
+			}
+			this.nextClusterId++;
+		}
+	}
+
+	// initial score, pairs across initial clusters never change -> fixed
+	protected double precomputeScoring(ObjectDoubleMap<CPair> predictions) {
+
+		int n = this.conceptArray.length;
+		List<int[]> pairs = new ArrayList<int[]>();
+		List<Double> values = new ArrayList<Double>();
+		int[] degree = new int[n];
 
 		this.fixedScore = 0;
-		List<CPair> pairs = new ArrayList<CPair>();
+		double score = 0;
 		for (ObjectDoubleCursor<CPair> p : predictions) {
-			if (this.singleConcepts.contains(p.key.c1) || this.singleConcepts.contains(p.key.c2)) {
+			int i = this.conceptIds.getOrDefault(p.key.c1, -1);
+			int j = this.conceptIds.getOrDefault(p.key.c2, -1);
+			if (i < 0 || j < 0 || i == j || this.clusterIds[i] != this.clusterIds[j]) {
 				this.fixedScore += 1 - p.value;
 			} else {
-				pairs.add(p.key);
+				score += p.value;
+				pairs.add(new int[] { i, j });
+				values.add(p.value);
+				degree[i]++;
+				degree[j]++;
 			}
 		}
 
-		this.allPairs = new CPair[pairs.size()];
-		this.predictions = new double[pairs.size()];
-		for (int i = 0; i < pairs.size(); i++) {
-			this.allPairs[i] = pairs.get(i);
-			this.predictions[i] = predictions.get(this.allPairs[i]);
+		this.pairStart = new int[n + 1];
+		for (int i = 0; i < n; i++)
+			this.pairStart[i + 1] = this.pairStart[i] + degree[i];
+		this.pairOther = new int[this.pairStart[n]];
+		this.pairDelta = new double[this.pairStart[n]];
+		int[] fill = new int[n];
+		for (int k = 0; k < pairs.size(); k++) {
+			int i = pairs.get(k)[0];
+			int j = pairs.get(k)[1];
+			double delta = (1 - values.get(k)) - values.get(k);
+			this.pairOther[this.pairStart[i] + fill[i]] = j;
+			this.pairDelta[this.pairStart[i] + fill[i]++] = delta;
+			this.pairOther[this.pairStart[j] + fill[j]] = i;
+			this.pairDelta[this.pairStart[j] + fill[j]++] = delta;
 		}
+
+		return this.fixedScore + score;
 	}
 
-	protected double scoreClustering(Set<List<Concept>> clusters) {
-		double score = this.fixedScore;
-		Set<CPair> pairs = this.convertClusters(clusters);
-		for (int i = 0; i < allPairs.length; i++) {
-			if (pairs.contains(allPairs[i]))
-				score += predictions[i];
-			else
-				score += (1 - predictions[i]);
-		}
-		return score;
+	protected void removeEdge(Move move) {
+		this.removed[move.edge] = true;
+		int id = this.nextClusterId++;
+		for (int c : move.side)
+			this.clusterIds[c] = id;
+	}
+
+	protected Set<List<Concept>> buildClusters() {
+		List<List<Concept>> byId = new ArrayList<List<Concept>>();
+		for (int id = 0; id < this.nextClusterId; id++)
+			byId.add(new ArrayList<Concept>());
+		for (int c = 0; c < this.conceptArray.length; c++)
+			byId.get(this.clusterIds[c]).add(this.conceptArray[c]);
+		Set<List<Concept>> clusters = new HashSet<List<Concept>>();
+		for (List<Concept> cluster : byId)
+			if (!cluster.isEmpty())
+				clusters.add(cluster);
+		return clusters;
 	}
 
-	private class Solution implements Comparable<Solution> {
-		public Set<CPair> removedEdges;
-		public double score;
+	private int other(int edge, int c) {
+		return this.edgeSource[edge] == c ? this.edgeTarget[edge] : this.edgeSource[edge];
+	}
 
-		public Solution() {
-			this.removedEdges = new HashSet<CPair>();
+	// removal of an edge: smaller side and score change if split off
+	protected static class Move {
+		public int edge;
+		public int cluster;
+		public int[] side;
+		public double delta;
+	}
+
+	// evaluates removals on the current clustering, buffers for one thread
+	private class Search {
+
+		private int[] visited = new int[conceptArray.length];
+		private int stamp;
+		private int[] queueA = new int[conceptArray.length];
+		private int[] queueB = new int[conceptArray.length];
+
+		public Move evaluate(int edge) {
+			Move move = new Move();
+			move.edge = edge;
+			move.cluster = clusterIds[edgeSource[edge]];
+			int sideStamp = this.smallerSide(move);
+			move.delta = this.removalDelta(move.side, sideStamp);
+			return move;
 		}
 
-		public Solution(Solution other, CPair newEdge) {
-			this.removedEdges = new HashSet<CPair>(other.removedEdges);
-			this.removedEdges.add(newEdge);
+		// searches from both ends alternately until one side is exhausted,
+		// returns the stamp its concepts are marked with
+		private int smallerSide(Move move) {
+			int u = edgeSource[move.edge];
+			int v = edgeTarget[move.edge];
+			int stampA = ++this.stamp;
+			int stampB = ++this.stamp;
+			int headA = 0, tailA = 0, headB = 0, tailB = 0;
+			this.queueA[tailA++] = u;
+			this.visited[u] = stampA;
+			this.queueB[tailB++] = v;
+			this.visited[v] = stampB;
+
+			while (true) {
+				if (headA == tailA) {
+					move.side = Arrays.copyOf(this.queueA, tailA);
+					return stampA;
+				}
+				tailA = this.expand(this.queueA[headA++], move.edge, this.queueA, tailA, stampA);
+				if (headB == tailB) {
+					move.side = Arrays.copyOf(this.queueB, tailB);
+					return stampB;
+				}
+				tailB = this.expand(this.queueB[headB++], move.edge, this.queueB, tailB, stampB);
+			}
 		}
 
-		@Override
-		public int compareTo(Solution o) {
-			return Double.compare(o.score, this.score);
+		private int expand(int c, int edge, int[] queue, int tail, int mark) {
+			for (int k = adjStart[c]; k < adjStart[c + 1]; k++) {
+				int e = adjEdge[k];
+				if (e == edge || removed[e])
+					continue;
+				int nb = other(e, c);
+				if (this.visited[nb] != mark) {
+					this.visited[nb] = mark;
+					queue[tail++] = nb;
+				}
+			}
+			return tail;
+		}
+
+		// pairs from the side to the rest of its cluster
+		private double removalDelta(int[] side, int sideStamp) {
+			double delta = 0;
+			for (int c : side) {
+				for (int k = pairStart[c]; k < pairStart[c + 1]; k++) {
+					int o = pairOther[k];
+					if (clusterIds[o] == clusterIds[c] && this.visited[o] != sideStamp)
+						delta += pairDelta[k];
+				}
+			}
+			return delta;
 		}
 	}
+
 }
@@ -12,13 +12,11 @@ import com.carrotsearch.hppc.ObjectIntHashMap;
 import com.carrotsearch.hppc.ObjectIntMap;
 import com.carrotsearch.hppc.cursors.ObjectCursor;
 
-import ilog.concert.IloException;
-import ilog.concert.IloIntVar;
-import ilog.concert.IloLinearIntExpr;
-import ilog.concert.IloLinearNumExpr;
-import ilog.cplex.IloCplex;
 import model.CPair;
 import model.Concept;
+import util.ilp.IlpSolver;
+import util.ilp.IlpSolver.Status;
+import util.ilp.LinearExpr;
 
 /**
  * creates best clustering given the classifications
@@ -26,7 +24,7 @@ import model.Concept;
  * finds most probable relation that is an equivalence relation over the
  * concepts
  * 
- * uses IBM CPLEX
+ * uses IBM CPLEX if available, pure Java branch and bound otherwise
  * 
  * @author falke
  *
@@ -34,38 +32,22 @@ import model.Concept;
 public class ILPClusterer_Cplex extends AbstractConceptClusterer {
 
 	private ObjectIntMap<CPair> varMap;
-	private IloIntVar[] vars;
+	private int[] vars;
 
 	@Override
 	public Set<List<Concept>> createClusters(Set<Concept> concepts, ObjectDoubleMap<CPair> predictions) {
 
 		// init
 		this.varMap = this.initVarMap(predictions);
-		IloCplex problem = null;
-		try {
-			problem = this.createILP(concepts, predictions);
-		} catch (IloException e) {
-			System.err.println("Error during ILP creation");
-			e.printStackTrace();
-			return null;
-		}
+		IlpSolver problem = this.createILP(concepts, predictions);
 
 		// solve
-		double[] sol = null;
-		try {
-			problem.setOut(null);
-			boolean solved = problem.solve();
-			if (!solved) {
-				System.err.println("cplex failed");
-			}
-
-			sol = problem.getValues(vars);
-
-		} catch (IloException e) {
-			System.err.println("Error solving ILP");
-			e.printStackTrace();
+		Status status = problem.solve();
+		if (status != Status.OPTIMAL && status != Status.FEASIBLE) {
+			System.err.println("Error solving ILP: " + status);
 			return null;
 		}
+		double[] sol = problem.getValues(vars);
 
 		// create corresponding clusters
 		Set<CPair> pairsToMerge = new HashSet<CPair>();
@@ -103,46 +85,45 @@ public class ILPClusterer_Cplex extends AbstractConceptClusterer {
 	 * @param predictions
 	 *            Predictions for all pairs of concepts
 	 * @return ILP
-	 * @throws IloException
 	 */
-	private IloCplex createILP(Set<Concept> concepts, ObjectDoubleMap<CPair> predictions) throws IloException {
+	private IlpSolver createILP(Set<Concept> concepts, ObjectDoubleMap<CPair> predictions) {
 
 		// define ILP
 		int nbVars = varMap.size(); // primary only
-		IloCplex problem = new IloCplex();
+		IlpSolver problem = IlpSolver.create();
 
 		/*
 		 * variables (all binary)
 		 * primary: x_p if pair p used
 		 * aux: x_p+n if pair p is not used
 		 */
-		this.vars = problem.boolVarArray(2 * nbVars);
+		this.vars = problem.addBoolVars(2 * nbVars);
 
 		/*
 		 * objective function
 		 * \sum_pairs s(p) * x_p + (1 - s(p)) (1 - x_p)
 		 * (1 - x_p) => x_p+n
 		 */
-		IloLinearNumExpr objFunc = problem.linearNumExpr();
+		LinearExpr objFunc = new LinearExpr();
 		for (ObjectCursor<CPair> p : predictions.keys()) {
 			int i = varMap.get(p.value);
 			double v = predictions.get(p.value);
 			if (Double.isNaN(v))
 				System.out.println("ERROR");
-			objFunc.addTerm(v, vars[i]);
-			objFunc.addTerm(1 - v, vars[i + nbVars]);
+			objFunc.add(v, vars[i]);
+			objFunc.add(1 - v, vars[i + nbVars]);
 		}
-		problem.addMaximize(objFunc);
+		problem.setObjective(objFunc, true);
 
 		/*
 		 * constraints - aux variables
 		 * -> one and only one of them has to be 1
 		 */
 		for (ObjectCursor<CPair> p : predictions.keys()) {
-			IloLinearIntExpr cons = problem.linearIntExpr();
+			LinearExpr cons = new LinearExpr();
 			int i = varMap.get(p.value);
-			cons.addTerm(1, vars[i]);
-			cons.addTerm(1, vars[i + nbVars]);
+			cons.add(1, vars[i]);
+			cons.add(1, vars[i + nbVars]);
 			problem.addEq(cons, 1);
 		}
 
@@ -165,22 +146,22 @@ public class ILPClusterer_Cplex extends AbstractConceptClusterer {
 							int pair_ik = varMap.get(new CPair(ci, ck));
 							int pair_jk = varMap.get(new CPair(cj, ck));
 
-							IloLinearIntExpr cons = problem.linearIntExpr();
-							cons.addTerm(-1, vars[pair_ij]);
-							cons.addTerm(-1, vars[pair_jk]);
-							cons.addTerm(1, vars[pair_ik]);
+							LinearExpr cons = new LinearExpr();
+							cons.add(-1, vars[pair_ij]);
+							cons.add(-1, vars[pair_jk]);
+							cons.add(1, vars[pair_ik]);
 							problem.addGe(cons, -1);
 
-							cons = problem.linearIntExpr();
-							cons.addTerm(-1, vars[pair_ij]);
-							cons.addTerm(1, vars[pair_jk]);
-							cons.addTerm(-1, vars[pair_ik]);
+							cons = new LinearExpr();
+							cons.add(-1, vars[pair_ij]);
+							cons.add(1, vars[pair_jk]);
+							cons.add(-1, vars[pair_ik]);
 							problem.addGe(cons, -1);
 
-							cons = problem.linearIntExpr();
-							cons.addTerm(1, vars[pair_ij]);
-							cons.addTerm(-1, vars[pair_jk]);
-							cons.addTerm(-1, vars[pair_ik]);
+							cons = new LinearExpr();
+							cons.add(1, vars[pair_ij]);
+							cons.add(-1, vars[pair_jk]);
+							cons.add(-1, vars[pair_ik]);
 							problem.addGe(cons, -1);
 
 						} catch (NullPointerException e) {
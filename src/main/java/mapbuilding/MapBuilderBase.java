@@ -8,6 +8,7 @@ import java.util.Map;
 import java.util.Set;
 
 import model.Concept;
+import model.ConceptGraph;
 import model.ConceptMap;
 import model.ExtractionResult;
 import model.Proposition;
@@ -18,6 +19,7 @@ public abstract class MapBuilderBase extends CmmComponent {
 
 	protected List<Concept> concepts;
 	protected List<Proposition> propositions;
+	protected ConceptGraph graph;
 	protected ConceptMap map;
 
 	@Override
@@ -28,6 +30,7 @@ public abstract class MapBuilderBase extends CmmComponent {
 		this.concepts = exComp.getConcepts();
 		this.propositions = exComp.getPropositions();
 		this.ensureUniqueConcepts();
+		this.graph = new ConceptGraph(this.concepts, this.propositions);
 
 		// create map
 		this.map = new ConceptMap(this.parent.getName());
@@ -93,6 +96,7 @@ public abstract class MapBuilderBase extends CmmComponent {
 	public void setData(ExtractionResult res) {
 		this.concepts = res.concepts;
 		this.propositions = res.propositions;
+		this.graph = new ConceptGraph(this.concepts, this.propositions);
 		this.map = new ConceptMap(this.parent.getName());
 	}
 }
\ No newline at end of file
@@ -1,15 +1,9 @@
 package mapbuilding;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import model.Concept;
-import model.Proposition;
 
 /**
  * Greedily add highest neighbor to build connected map
@@ -19,43 +13,39 @@ import model.Proposition;
  */
 public class MapBuilderGreedy extends MapBuilderBase {
 
-	protected Map<Concept, Set<Proposition>> propByConcept;
-
 	@Override
 	public void buildMap() {
 
-		// adjacency list
-		this.propByConcept = new HashMap<Concept, Set<Proposition>>();
-		for (Proposition p : this.propositions) {
-			this.propByConcept.putIfAbsent(p.sourceConcept, new HashSet<Proposition>());
-			this.propByConcept.get(p.sourceConcept).add(p);
-			this.propByConcept.putIfAbsent(p.targetConcept, new HashSet<Proposition>());
-			this.propByConcept.get(p.targetConcept).add(p);
-		}
-		for (Concept c : this.concepts)
-			this.propByConcept.putIfAbsent(c, new HashSet<Proposition>());
-
-		// greedy concept selection
-		Set<Concept> subset = new HashSet<Concept>();
-		subset.add(this.concepts.get(0));
-
-		while (subset.size() < this.parent.getMaxConcepts()) {
-
-			Set<Concept> neighbors = new HashSet<Concept>();
-			for (Concept c : subset) {
-				for (Proposition p : this.propByConcept.get(c)) {
-					if (!subset.contains(p.sourceConcept))
-						neighbors.add(p.sourceConcept);
-					if (!subset.contains(p.targetConcept))
-						neighbors.add(p.targetConcept);
-				}
+		// greedy concept selection, frontier = neighbors of subset
+		boolean[] inSubset = new boolean[this.graph.size()];
+		boolean[] inFrontier = new boolean[this.graph.size()];
+		int size = 0;
+		int next = this.graph.getIndex(this.concepts.get(0));
+
+		while (next >= 0) {
+			inSubset[next] = true;
+			inFrontier[next] = false;
+			size++;
+			for (int e = this.graph.getStart(next); e < this.graph.getEnd(next); e++) {
+				int nb = this.graph.getNeighbor(e);
+				if (!inSubset[nb])
+					inFrontier[nb] = true;
+			}
+			if (size >= this.parent.getMaxConcepts())
+				break;
+
+			// natural order = highest weight first
+			next = -1;
+			for (int i = 0; i < inFrontier.length; i++) {
+				if (inFrontier[i] && (next < 0 || this.graph.getConcept(i).compareTo(this.graph.getConcept(next)) < 0))
+					next = i;
 			}
-
-			List<Concept> sorted = new ArrayList<Concept>(neighbors);
-			Collections.sort(sorted);
-			subset.add(sorted.get(0));
 		}
 
+		Set<Concept> subset = new HashSet<Concept>();
+		for (int i = 0; i < inSubset.length; i++)
+			if (inSubset[i])
+				subset.add(this.graph.getConcept(i));
 		this.buildMapFromSubset(subset);
 	}
 
@@ -14,8 +14,7 @@ public class MapBuilderILP extends MapBuilderBase {
 	public void buildMap() {
 
 		// set up and solve ILP
-		GraphSummarizer ilp = new SubgraphILPByComponent(this.concepts, this.propositions, this.parent.getMaxConcepts(),
-				ilpTimeout);
+		GraphSummarizer ilp = new SubgraphILPByComponent(this.graph, this.parent.getMaxConcepts(), ilpTimeout);
 		Set<Concept> subgraph = ilp.getSubgraph();
 
 		this.buildMapFromSubset(subgraph);
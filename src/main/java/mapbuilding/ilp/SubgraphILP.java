@@ -11,14 +11,12 @@ import java.util.stream.Collectors;
 import com.carrotsearch.hppc.ObjectIntHashMap;
 import com.carrotsearch.hppc.ObjectIntMap;
 
-import ilog.concert.IloException;
-import ilog.concert.IloIntVar;
-import ilog.concert.IloLinearIntExpr;
-import ilog.concert.IloLinearNumExpr;
-import ilog.cplex.IloCplex;
 import model.CPair;
 import model.Concept;
 import model.Proposition;
+import util.ilp.IlpSolver;
+import util.ilp.IlpSolver.Status;
+import util.ilp.LinearExpr;
 
 /**
  * 
@@ -56,10 +54,10 @@ public class SubgraphILP extends GraphSummarizer {
 	private Set<CPair> relations;
 	private CPair[] edges;
 
-	private IloCplex problem;
-	private IloIntVar[] conceptVars;
-	private IloIntVar[] edgeVars;
-	private IloIntVar[] flowVars;
+	private IlpSolver problem;
+	private int[] conceptVars;
+	private int[] edgeVars;
+	private int[] flowVars;
 
 	public SubgraphILP(List<Concept> concepts, List<Proposition> propositions, int maxSize) {
 		super(concepts, propositions, maxSize);
@@ -97,47 +95,19 @@ public class SubgraphILP extends GraphSummarizer {
 		long start = System.currentTimeMillis();
 		Logger.getGlobal().log(Level.INFO, "Solving ILP");
 
-		double[] sol = null;
-		try {
-			problem.setOut(null);
-			boolean solved = problem.solve();
-			if (!solved) {
-				System.err.println("cplex failed");
-			}
-			sol = problem.getValues(this.conceptVars);
-
-			if (DEBUG) {
-				System.out.println(this.problem);
-				System.out.println(this.problem.getObjValue());
-				System.out.println(Arrays.stream(this.conceptVars).map(v -> {
-					try {
-						return v.getName() + "=" + this.problem.getValue(v);
-					} catch (Exception e) {
-						return "";
-					}
-				}).collect(Collectors.joining(", ")));
-				System.out.println(Arrays.stream(this.edgeVars).map(v -> {
-					try {
-						return v.getName() + "=" + this.problem.getValue(v);
-					} catch (Exception e) {
-						return "";
-					}
-				}).collect(Collectors.joining(", ")));
-				System.out.println(Arrays.stream(this.flowVars).map(v -> {
-					try {
-						return v.getName() + "=" + this.problem.getValue(v);
-					} catch (Exception e) {
-						return "";
-					}
-				}).collect(Collectors.joining(", ")));
-			}
-			System.out.println(this.problem.getObjValue());
-
-		} catch (IloException e) {
-			System.err.println("Error solving ILP");
-			e.printStackTrace();
+		Status status = problem.solve();
+		if (status != Status.OPTIMAL && status != Status.FEASIBLE) {
+			System.err.println("Error solving ILP: " + status);
 			return null;
 		}
+		double[] sol = problem.getValues(this.conceptVars);
+
+		if (DEBUG) {
+			System.out.println(this.problem);
+			System.out.println(Arrays.toString(problem.getValues(this.edgeVars)));
+			System.out.println(Arrays.toString(problem.getValues(this.flowVars)));
+		}
+		System.out.println(this.problem.getObjValue());
 
 		Set<Concept> conceptsInSubgraph = new HashSet<Concept>();
 		for (int i = 0; i < sol.length; i++) {
@@ -152,68 +122,48 @@ public class SubgraphILP extends GraphSummarizer {
 	}
 
 	private void createProblem() {
-		try {
-
-			this.problem = new IloCplex();
-			this.addObjective();
-			this.addSizeConstraint();
-			this.addConnectivityConstraints();
 
-			System.out.println("variables: " + this.problem.getNcols() + ", constraints: " + this.problem.getNrows());
+		this.problem = IlpSolver.create();
+		this.addObjective();
+		this.addSizeConstraint();
+		this.addConnectivityConstraints();
 
-		} catch (IloException e) {
-			e.printStackTrace();
-		}
+		System.out.println("variables: " + this.problem.getNumVars() + ", constraints: " + this.problem.getNumConstraints());
 	}
 
-	private void addObjective() throws IloException {
+	private void addObjective() {
 
 		// one binary variable per concept
-		if (DEBUG) {
-			String[] names = new String[this.concepts.size()];
-			for (int i = 0; i < names.length; i++)
-				names[i] = "c" + i;
-			this.conceptVars = this.problem.boolVarArray(this.concepts.size(), names);
-		} else {
-			this.conceptVars = this.problem.boolVarArray(this.concepts.size());
-		}
+		this.conceptVars = this.problem.addBoolVars(this.concepts.size());
 
 		// sum of weights of selected concepts
-		IloLinearNumExpr obj = this.problem.linearNumExpr();
+		LinearExpr obj = new LinearExpr();
 		for (int i = 0; i < this.conceptVars.length; i++)
-			obj.addTerm(this.conceptVars[i], this.concepts.get(i).weight);
-		this.problem.addMaximize(obj);
+			obj.add(this.concepts.get(i).weight, this.conceptVars[i]);
+		this.problem.setObjective(obj, true);
 
 	}
 
-	private void addSizeConstraint() throws IloException {
+	private void addSizeConstraint() {
 
 		// number of selected concepts less than limit
-		this.problem.addLe(this.problem.sum(this.conceptVars), this.maxSize);
+		LinearExpr count = new LinearExpr();
+		for (int i = 0; i < this.conceptVars.length; i++)
+			count.add(1, this.conceptVars[i]);
+		this.problem.addLe(count, this.maxSize);
 
 	}
 
-	private void addConnectivityConstraints() throws IloException {
+	private void addConnectivityConstraints() {
 
 		// A) edges
 
-		if (DEBUG) {
-			String[] names = new String[this.edges.length];
-			for (int i = 0; i < this.edges.length; i++) {
-				CPair e = this.edges[i];
-				String c1 = this.conceptIds.containsKey(e.c1) ? this.conceptIds.get(e.c1) + "" : "x";
-				String c2 = this.conceptIds.containsKey(e.c2) ? this.conceptIds.get(e.c2) + "" : "x";
-				names[i] = "e" + c1 + c2;
-			}
-			this.edgeVars = this.problem.boolVarArray(this.edges.length, names);
-		} else {
-			this.edgeVars = this.problem.boolVarArray(this.edges.length);
-		}
+		this.edgeVars = this.problem.addBoolVars(this.edges.length);
 
 		// edge only where relation
 		for (int i = 0; i < this.edges.length; i++) {
 			if (this.edges[i].c1 != null && !this.relations.contains(this.edges[i]))
-				this.problem.addEq(this.edgeVars[i], 0);
+				this.problem.addEq(new LinearExpr().add(1, this.edgeVars[i]), 0);
 		}
 
 		// edge only if concept included
@@ -221,40 +171,31 @@ public class SubgraphILP extends GraphSummarizer {
 			CPair e = this.edges[i];
 			// source
 			if (e.c1 != null)
-				this.problem.addLe(this.edgeVars[i], this.conceptVars[this.conceptIds.get(e.c1)]);
+				this.problem.addLe(
+						new LinearExpr().add(1, this.edgeVars[i]).add(-1, this.conceptVars[this.conceptIds.get(e.c1)]), 0);
 			// target
-			this.problem.addLe(this.edgeVars[i], this.conceptVars[this.conceptIds.get(e.c2)]);
+			this.problem.addLe(
+					new LinearExpr().add(1, this.edgeVars[i]).add(-1, this.conceptVars[this.conceptIds.get(e.c2)]), 0);
 		}
 
 		// root node only connects to one concept
-		IloLinearIntExpr sum = this.problem.linearIntExpr();
+		LinearExpr sum = new LinearExpr();
 		for (int i = 0; i < this.edges.length; i++) {
 			if (this.edges[i].c1 == null)
-				sum.addTerm(1, this.edgeVars[i]);
+				sum.add(1, this.edgeVars[i]);
 		}
 		this.problem.addEq(sum, 1);
 
 		// B) flow
 
-		if (DEBUG) {
-			String[] names = new String[this.edges.length];
-			for (int i = 0; i < this.edges.length; i++) {
-				CPair e = this.edges[i];
-				String c1 = this.conceptIds.containsKey(e.c1) ? this.conceptIds.get(e.c1) + "" : "x";
-				String c2 = this.conceptIds.containsKey(e.c2) ? this.conceptIds.get(e.c2) + "" : "x";
-				names[i] = "f" + c1 + c2;
-			}
-			this.flowVars = this.problem.intVarArray(this.edges.length, 0, Integer.MAX_VALUE, names);
-		} else {
-			this.flowVars = this.problem.intVarArray(this.edges.length, 0, Integer.MAX_VALUE);
-		}
+		this.flowVars = this.problem.addVars(this.edges.length, 0, Integer.MAX_VALUE, true);
 
 		// root sends flow <= included concepts
-		sum = this.problem.linearIntExpr();
+		sum = new LinearExpr();
 		for (int i = 0; i < this.edges.length; i++) {
 			if (this.edges[i].c1 == null) {
-				sum.addTerm(1, this.flowVars[i]);
-				sum.addTerm(-1, this.conceptVars[this.conceptIds.get(this.edges[i].c2)]);
+				sum.add(1, this.flowVars[i]);
+				sum.add(-1, this.conceptVars[this.conceptIds.get(this.edges[i].c2)]);
 			}
 		}
 		this.problem.addEq(sum, 0);
@@ -262,22 +203,22 @@ public class SubgraphILP extends GraphSummarizer {
 		// concepts consumes one flow
 		for (int i = 0; i < this.concepts.size(); i++) {
 			Concept c = this.concepts.get(i);
-			sum = this.problem.linearIntExpr();
+			sum = new LinearExpr();
 			for (int j = 0; j < this.edges.length; j++) {
 				if (this.edges[j].c2 == c)
-					sum.addTerm(1, this.flowVars[j]);
+					sum.add(1, this.flowVars[j]);
 				if (this.edges[j].c1 == c)
-					sum.addTerm(-1, this.flowVars[j]);
+					sum.add(-1, this.flowVars[j]);
 			}
-			sum.addTerm(-1, this.conceptVars[this.conceptIds.get(c)]);
+			sum.add(-1, this.conceptVars[this.conceptIds.get(c)]);
 			this.problem.addEq(sum, 0);
 		}
 
 		// flow only where edges are present
 		for (int i = 0; i < this.edges.length; i++) {
-			IloLinearIntExpr lin = this.problem.linearIntExpr();
-			lin.addTerm(this.concepts.size(), this.edgeVars[i]);
-			lin.addTerm(-1, this.flowVars[i]);
+			LinearExpr lin = new LinearExpr();
+			lin.add(this.concepts.size(), this.edgeVars[i]);
+			lin.add(-1, this.flowVars[i]);
 			this.problem.addGe(lin, 0);
 		}
 
@@ -1,75 +1,100 @@
 package mapbuilding.ilp;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import model.Concept;
+import model.ConceptGraph;
 import model.Proposition;
-import util.ConnectedComponents;
 
+/**
+ * Solves the ILP for each connected component separately
+ * 
+ * Components are bounded by their top maxSize weights and skipped if they
+ * cannot beat the best subgraph found so far. For the remaining ones, greedy
+ * growth from the highest weighted concepts gives a solution that is used
+ * directly if it reaches the bound and as start for the ILP otherwise.
+ */
 public class SubgraphILPByComponent extends GraphSummarizer {
 
+	private static final int NB_SEEDS = 5;
+	private static final double EPS = 1e-9;
+
 	private int maxTime = -1;
+	private ConceptGraph graph;
 
 	public SubgraphILPByComponent(List<Concept> concepts, List<Proposition> propositions, int maxSize) {
-		super(concepts, propositions, maxSize);
+		this(concepts, propositions, maxSize, -1);
 	}
 
 	public SubgraphILPByComponent(List<Concept> concepts, List<Proposition> propositions, int maxSize, int maxTime) {
-		super(concepts, propositions, maxSize);
+		this(new ConceptGraph(concepts, propositions), maxSize, maxTime);
+	}
+
+	public SubgraphILPByComponent(ConceptGraph graph, int maxSize, int maxTime) {
+		super(graph.getConcepts(), graph.getPropositions(), maxSize);
+		this.graph = graph;
 		this.maxTime = maxTime;
 	}
 
 	@Override
 	public Set<Concept> getSubgraph() {
 
-		// build adjacency list
-		Map<Concept, Set<Proposition>> propsByConcept = new HashMap<Concept, Set<Proposition>>();
-		for (Proposition p : propositions) {
-			propsByConcept.putIfAbsent(p.sourceConcept, new HashSet<Proposition>());
-			propsByConcept.get(p.sourceConcept).add(p);
-			propsByConcept.putIfAbsent(p.targetConcept, new HashSet<Proposition>());
-			propsByConcept.get(p.targetConcept).add(p);
-		}
-		for (Concept c : concepts)
-			propsByConcept.putIfAbsent(c, new HashSet<Proposition>());
-
 		// find connected components
-		List<Set<Concept>> components = ConnectedComponents.findConnectedComponents(concepts, propsByConcept);
+		List<int[]> components = this.graph.getComponents();
 
 		// check each component
 		double bestScore = -Double.MAX_VALUE;
 		Set<Concept> bestSubgraph = null;
-		for (Set<Concept> component : components) {
-
-			// if even the full component cannot be better, skip
-			double maxScore = component.stream().mapToDouble(x -> x.weight).sum();
-			if (maxScore <= bestScore)
+		int skipped = 0;
+		int solved = 0;
+		for (int[] component : components) {
+
+			// if even the best maxSize concepts cannot be better, skip
+			double maxScore = this.upperBound(component);
+			if (maxScore <= bestScore) {
+				skipped++;
 				continue;
+			}
 
 			double score;
 			Set<Concept> subgraph = null;
 
 			// if smaller than max -> already a solution
-			if (component.size() <= this.maxSize) {
+			if (component.length <= this.maxSize) {
 
-				score = maxScore;
-				subgraph = component;
+				score = this.score(component);
+				subgraph = this.graph.toConcepts(component);
 
 			} else {
 
+				// heuristic solution, optimal if it reaches the bound
+				int[] greedy = this.growGreedy(component);
+				score = this.score(greedy);
+				subgraph = this.graph.toConcepts(greedy);
+
 				// if not, run ILP to find best subgraph
-				Set<Proposition> compProps = component.stream().flatMap(x -> propsByConcept.get(x).stream())
-						.collect(Collectors.toSet());
-				SubgraphILPFast ilp = new SubgraphILPFast(new ArrayList<Concept>(component),
-						new ArrayList<Proposition>(compProps), maxSize, maxTime);
-				subgraph = ilp.getSubgraph();
-				score = subgraph.stream().mapToDouble(x -> x.weight).sum();
+				if (score < maxScore - EPS) {
+					List<Concept> compConcepts = new ArrayList<Concept>(component.length);
+					for (int i : component)
+						compConcepts.add(this.graph.getConcept(i));
+					SubgraphILPFast ilp = new SubgraphILPFast(compConcepts, this.graph.getPropositions(component),
+							maxSize, maxTime);
+					ilp.setStart(subgraph);
+					Set<Concept> ilpSubgraph = ilp.getSubgraph();
+					solved++;
+					if (ilpSubgraph != null) {
+						double ilpScore = ilpSubgraph.stream().mapToDouble(x -> x.weight).sum();
+						if (ilpScore > score) {
+							score = ilpScore;
+							subgraph = ilpSubgraph;
+						}
+					}
+				}
 			}
 
 			if (score > bestScore) {
@@ -78,7 +103,82 @@ public class SubgraphILPByComponent extends GraphSummarizer {
 			}
 		}
 
+		Logger.getGlobal().log(Level.INFO,
+				"components: " + components.size() + ", skipped: " + skipped + ", ILPs: " + solved);
+
 		return bestSubgraph;
 	}
 
+	// sum of the maxSize highest weights, at least the highest one
+	private double upperBound(int[] component) {
+		double[] weights = new double[component.length];
+		for (int k = 0; k < component.length; k++)
+			weights[k] = this.graph.getWeight(component[k]);
+		Arrays.sort(weights);
+		double bound = weights[weights.length - 1];
+		for (int k = weights.length - 2; k >= 0 && k >= weights.length - this.maxSize; k--) {
+			if (weights[k] > 0)
+				bound += weights[k];
+		}
+		return bound;
+	}
+
+	private double score(int[] subgraph) {
+		double score = 0;
+		for (int i : subgraph)
+			score += this.graph.getWeight(i);
+		return score;
+	}
+
+	/**
+	 * grows a connected subgraph from each of the highest weighted concepts,
+	 * always adding the highest weighted neighbor, and returns the best one
+	 */
+	private int[] growGreedy(int[] component) {
+
+		Integer[] order = new Integer[component.length];
+		for (int k = 0; k < component.length; k++)
+			order[k] = component[k];
+		Arrays.sort(order, (a, b) -> Double.compare(this.graph.getWeight(b), this.graph.getWeight(a)));
+
+		boolean[] inSubset = new boolean[this.graph.size()];
+		boolean[] inFrontier = new boolean[this.graph.size()];
+		int[] best = null;
+		double bestScore = -Double.MAX_VALUE;
+		for (int s = 0; s < Math.min(NB_SEEDS, order.length); s++) {
+
+			int[] subset = new int[Math.min(this.maxSize, component.length)];
+			int size = 0;
+			int next = order[s];
+			while (next >= 0) {
+				inSubset[next] = true;
+				inFrontier[next] = false;
+				subset[size++] = next;
+				if (size >= subset.length)
+					break;
+				for (int e = this.graph.getStart(next); e < this.graph.getEnd(next); e++) {
+					int nb = this.graph.getNeighbor(e);
+					if (!inSubset[nb])
+						inFrontier[nb] = true;
+				}
+				next = -1;
+				for (int i : component) {
+					if (inFrontier[i] && (next < 0 || this.graph.getWeight(i) > this.graph.getWeight(next)))
+						next = i;
+				}
+			}
+
+			subset = Arrays.copyOf(subset, size);
+			double score = this.score(subset);
+			if (score > bestScore) {
+				bestScore = score;
+				best = subset;
+			}
+			for (int i : component)
+				inSubset[i] = inFrontier[i] = false;
+		}
+
+		return best;
+	}
+
 }
@@ -7,18 +7,18 @@ import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.LongHashSet;
 import com.carrotsearch.hppc.ObjectIntHashMap;
 import com.carrotsearch.hppc.ObjectIntMap;
 
-import ilog.concert.IloException;
-import ilog.concert.IloIntVar;
-import ilog.concert.IloLinearIntExpr;
-import ilog.concert.IloLinearNumExpr;
-import ilog.cplex.IloCplex;
-import ilog.cplex.IloCplex.Status;
-import model.CPair;
 import model.Concept;
 import model.Proposition;
+import util.ilp.IlpSolver;
+import util.ilp.IlpSolver.Constraint;
+import util.ilp.IlpSolver.Sense;
+import util.ilp.IlpSolver.Status;
+import util.ilp.LinearExpr;
 
 /**
  * 
@@ -33,17 +33,18 @@ import model.Proposition;
  * Variables:
  * c_i - concept included - binary
  * g_i - concept not included - binary
- * e_0i - edge from o to i - binary
- * f_ij - flow from i to j - int, >= 0
+ * y_ij - undirected edge between i and j in spanning tree - binary
  * 
  * Constraints:
  * 1) \forall i: \sum c_i <= L (size)
- * 2) \forall ij: f_ij <= c_i*C (flow only if source included)
- * 3) \forall ij: f_ij <= c_j*C (flow only if target included)
- * 4) \sum e_0i = 1 (root link sends flow to only one concept)
- * 5) \forall ij: C*e_0j - f_0j >= 0 (root flow only to the selected concept)
- * 6) \sum f_0i - \sum c_i = 0 (root sends flow <= included concepts)
- * 7) \forall k: \sum f_ik - \sum f_kp - c_k = 0 (concepts consumes on flow)
+ * 2) \forall ij: y_ij <= c_i (edge only if source included)
+ * 3) \forall ij: y_ij <= c_j (edge only if target included)
+ * 4) \sum y_ij - \sum c_i = -1 (edges form a tree over included concepts)
+ * 5) \forall S, k \in S: \sum_{ij \in S} y_ij - \sum_{i \in S, i != k} c_i <= 0
+ * (no cycles, generalized subtour elimination, separated lazily)
+ * 
+ * Together, 4) and 5) require the included concepts to be connected. Only the
+ * cuts 5) violated by integer solutions are added to the model.
  * 
  * @author falke
  *
@@ -51,19 +52,20 @@ import model.Proposition;
 public class SubgraphILPFast extends GraphSummarizer {
 
 	private static final boolean DEBUG = false;
+	private static final double EPS = 1e-6;
 
 	private int maxTime = 300;
 	private ObjectIntMap<Concept> conceptIds;
-	private List<CPair> edges;
+	private int[] edgeSource;
+	private int[] edgeTarget;
 
 	private Set<Concept> goldConcepts;
 	private boolean withPenalty;
 	private double penalty;
 
-	private IloCplex problem;
-	private IloIntVar[] conceptVars;
-	private IloIntVar[] edgeVars; // root only
-	private IloIntVar[] flowVars;
+	private IlpSolver problem;
+	private int[] conceptVars;
+	private int[] edgeVars;
 
 	public SubgraphILPFast(List<Concept> concepts, List<Proposition> propositions, int maxSize) {
 		this(concepts, propositions, maxSize, -1, null, 0);
@@ -91,12 +93,23 @@ public class SubgraphILPFast extends GraphSummarizer {
 		for (int i = 0; i < this.concepts.size(); i++)
 			this.conceptIds.put(this.concepts.get(i), i);
 
-		Set<CPair> edges = new HashSet<CPair>();
+		// undirected edges between concept indices
+		LongHashSet seen = new LongHashSet();
+		IntArrayList source = new IntArrayList();
+		IntArrayList target = new IntArrayList();
 		for (Proposition p : this.propositions) {
-			edges.add(new CPair(p.sourceConcept, p.targetConcept));
-			edges.add(new CPair(p.targetConcept, p.sourceConcept));
+			int i = this.conceptIds.getOrDefault(p.sourceConcept, -1);
+			int j = this.conceptIds.getOrDefault(p.targetConcept, -1);
+			if (i < 0 || j < 0 || i == j)
+				continue;
+			long key = Math.min(i, j) * (long) this.concepts.size() + Math.max(i, j);
+			if (seen.add(key)) {
+				source.add(i);
+				target.add(j);
+			}
 		}
-		this.edges = new ArrayList<CPair>(edges);
+		this.edgeSource = source.toArray();
+		this.edgeTarget = target.toArray();
 
 		this.createProblem();
 
@@ -104,37 +117,61 @@ public class SubgraphILPFast extends GraphSummarizer {
 		Logger.getGlobal().log(Level.INFO, "- done: " + duration);
 	}
 
+	/**
+	 * uses a connected subgraph, e.g. found heuristically, as initial solution
+	 * 
+	 * @param subgraph
+	 *            concepts of the initial solution
+	 */
+	public void setStart(Set<Concept> subgraph) {
+
+		int n = this.concepts.size();
+		double[] values = new double[this.problem.getNumVars()];
+		for (int i = 0; i < n; i++) {
+			boolean selected = subgraph.contains(this.concepts.get(i));
+			values[this.conceptVars[i]] = selected ? 1 : 0;
+			if (withPenalty)
+				values[this.conceptVars[i + n]] = selected ? 0 : 1;
+		}
+
+		// spanning tree over the selected concepts
+		int[] parent = new int[n];
+		for (int i = 0; i < n; i++)
+			parent[i] = i;
+		for (int e = 0; e < this.edgeVars.length; e++) {
+			if (values[this.conceptVars[this.edgeSource[e]]] > 0.5
+					&& values[this.conceptVars[this.edgeTarget[e]]] > 0.5) {
+				int a = find(parent, this.edgeSource[e]);
+				int b = find(parent, this.edgeTarget[e]);
+				if (a != b) {
+					parent[a] = b;
+					values[this.edgeVars[e]] = 1;
+				}
+			}
+		}
+
+		this.problem.setStart(values);
+	}
+
 	@Override
 	public Set<Concept> getSubgraph() {
 
 		long start = System.currentTimeMillis();
 		Logger.getGlobal().log(Level.INFO, "Solving ILP");
 
-		double[] sol = null;
-		try {
-			problem.setOut(null);
-			problem.setParam(IloCplex.DoubleParam.TimeLimit, maxTime);
-			// problem.tuneParam(); -> takes very long
-			boolean solved = problem.solve();
-			if (!solved) {
-				System.err.println("cplex failed");
-			}
-			Status status = problem.getStatus();
-			if (status.equals(Status.Feasible))
-				Logger.getGlobal().log(Level.INFO, "timeout, using best solution");
-			else if (!status.equals(Status.Optimal))
-				System.err.println("cplex failed");
-
-			sol = problem.getValues(this.conceptVars);
+		problem.setTimeLimit(maxTime);
+		Status status = problem.solve();
+		if (status == Status.FEASIBLE)
+			Logger.getGlobal().log(Level.INFO, "timeout, using best solution");
+		else if (status != Status.OPTIMAL) {
+			System.err.println("Error solving ILP: " + status);
+			return null;
+		}
 
-			if (DEBUG) {
-				System.out.println(this.problem);
-			}
+		double[] sol = problem.getValues(this.conceptVars);
 
-		} catch (IloException e) {
-			System.err.println("Error solving ILP");
-			e.printStackTrace();
-			return null;
+		if (DEBUG) {
+			System.out.println(this.problem);
 		}
 
 		Set<Concept> conceptsInSubgraph = new HashSet<Concept>();
@@ -150,155 +187,158 @@ public class SubgraphILPFast extends GraphSummarizer {
 	}
 
 	private void createProblem() {
-		try {
 
-			this.problem = new IloCplex();
-			this.addObjective();
-			this.addSizeConstraint();
-			this.addConnectivityConstraints();
+		this.problem = IlpSolver.create();
+		this.addObjective();
+		this.addSizeConstraint();
+		this.addConnectivityConstraints();
 
-			Logger.getGlobal().log(Level.INFO,
-					"variables: " + this.problem.getNcols() + ", constraints: " + this.problem.getNrows());
-
-		} catch (IloException e) {
-			e.printStackTrace();
-		}
+		Logger.getGlobal().log(Level.INFO,
+				"variables: " + this.problem.getNumVars() + ", constraints: " + this.problem.getNumConstraints());
 	}
 
-	private void addObjective() throws IloException {
+	private void addObjective() {
 
 		// one binary variable per concept
-		if (DEBUG) {
-			int nb = withPenalty ? this.concepts.size() * 2 : this.concepts.size();
-			String[] names = new String[nb];
-			for (int i = 0; i < this.concepts.size(); i++)
-				names[i] = "c" + i;
-			if (withPenalty) {
-				for (int i = this.concepts.size(); i < this.concepts.size() * 2; i++)
-					names[i] = "pc" + i;
-			}
-			this.conceptVars = this.problem.boolVarArray(nb, names);
-		} else {
-			int nb = withPenalty ? this.concepts.size() * 2 : this.concepts.size();
-			this.conceptVars = this.problem.boolVarArray(nb);
-		}
+		int nb = withPenalty ? this.concepts.size() * 2 : this.concepts.size();
+		this.conceptVars = this.problem.addBoolVars(nb);
 
 		// with penalty -> contraints for aux variables
 		if (withPenalty) {
 			for (int i = 0; i < this.concepts.size(); i++) {
-				IloLinearIntExpr lin = this.problem.linearIntExpr();
-				lin.addTerm(1, this.conceptVars[i]);
-				lin.addTerm(1, this.conceptVars[i + this.concepts.size()]);
-				this.problem.addEq(1, lin);
+				LinearExpr lin = new LinearExpr();
+				lin.add(1, this.conceptVars[i]);
+				lin.add(1, this.conceptVars[i + this.concepts.size()]);
+				this.problem.addEq(lin, 1);
 			}
 		}
 
 		// sum of weights of selected concepts
-		IloLinearNumExpr obj = this.problem.linearNumExpr();
+		LinearExpr obj = new LinearExpr();
 		for (int i = 0; i < this.concepts.size(); i++) {
 			Concept c = this.concepts.get(i);
 			double s = c.weight;
 			if (withPenalty && !this.goldConcepts.contains(c))
 				s += penalty;
-			obj.addTerm(this.conceptVars[i], s);
+			obj.add(s, this.conceptVars[i]);
 			if (withPenalty && this.goldConcepts.contains(c))
-				obj.addTerm(this.conceptVars[i + this.concepts.size()], penalty);
+				obj.add(penalty, this.conceptVars[i + this.concepts.size()]);
 		}
-		this.problem.addMaximize(obj);
+		this.problem.setObjective(obj, true);
 
 	}
 
-	private void addSizeConstraint() throws IloException {
+	private void addSizeConstraint() {
 
 		// number of selected concepts less than limit
-		IloLinearIntExpr count = this.problem.linearIntExpr();
+		LinearExpr count = new LinearExpr();
 		for (int i = 0; i < this.concepts.size(); i++)
-			count.addTerm(1, this.conceptVars[i]);
+			count.add(1, this.conceptVars[i]);
 		this.problem.addLe(count, this.maxSize);
 
 	}
 
-	private void addConnectivityConstraints() throws IloException {
+	private void addConnectivityConstraints() {
 
-		// A) edges (root to concept)
+		this.edgeVars = this.problem.addBoolVars(this.edgeSource.length);
 
-		if (DEBUG) {
-			String[] names = new String[this.concepts.size()];
-			for (int i = 0; i < names.length; i++)
-				names[i] = "eX" + i;
-			this.edgeVars = this.problem.boolVarArray(this.concepts.size(), names);
-		} else {
-			this.edgeVars = this.problem.boolVarArray(this.concepts.size());
+		// edge only if concepts included
+		for (int e = 0; e < this.edgeVars.length; e++) {
+			this.problem.addLe(
+					new LinearExpr().add(1, this.edgeVars[e]).add(-1, this.conceptVars[this.edgeSource[e]]), 0);
+			this.problem.addLe(
+					new LinearExpr().add(1, this.edgeVars[e]).add(-1, this.conceptVars[this.edgeTarget[e]]), 0);
 		}
 
-		// root node only connects to one concept
-		IloLinearIntExpr sumRoot = this.problem.linearIntExpr();
-		for (int i = 0; i < this.edgeVars.length; i++)
-			sumRoot.addTerm(1, this.edgeVars[i]);
-		this.problem.addEq(sumRoot, 1);
+		// number of edges = included concepts - 1
+		LinearExpr tree = new LinearExpr();
+		for (int e = 0; e < this.edgeVars.length; e++)
+			tree.add(1, this.edgeVars[e]);
+		for (int i = 0; i < this.concepts.size(); i++)
+			tree.add(-1, this.conceptVars[i]);
+		this.problem.addEq(tree, -1);
 
-		// B) flow (root edges + over edges)
+		// no cycles, separated on demand
+		this.problem.setLazyConstraintCallback(this::separateCycles);
+	}
 
-		if (DEBUG) {
-			String[] names = new String[this.concepts.size() + this.edges.size()];
-			for (int i = 0; i < this.concepts.size(); i++)
-				names[i] = "fX" + i;
-			for (int i = 0; i < this.edges.size(); i++) {
-				CPair e = this.edges.get(i);
-				names[this.concepts.size() + i] = "f" + this.conceptIds.get(e.c1) + this.conceptIds.get(e.c2);
+	/**
+	 * finds connected components of the edges used in a solution, every
+	 * component S with more edge weight than \sum_{i \in S, i != k} c_i yields a
+	 * violated subtour elimination constraint (exact for integer solutions)
+	 * 
+	 * @param values
+	 *            solution, possibly fractional
+	 * @return violated constraints, empty if used concepts form a tree
+	 */
+	private List<Constraint> separateCycles(double[] values) {
+
+		int n = this.concepts.size();
+		int[] parent = new int[n];
+		for (int i = 0; i < n; i++)
+			parent[i] = i;
+		for (int e = 0; e < this.edgeVars.length; e++) {
+			if (values[this.edgeVars[e]] > EPS) {
+				int a = find(parent, this.edgeSource[e]);
+				int b = find(parent, this.edgeTarget[e]);
+				if (a != b)
+					parent[a] = b;
 			}
-			this.flowVars = this.problem.intVarArray(this.concepts.size() + this.edges.size(), 0, Integer.MAX_VALUE,
-					names);
-		} else {
-			this.flowVars = this.problem.intVarArray(this.concepts.size() + this.edges.size(), 0, Integer.MAX_VALUE);
 		}
 
-		// root sends flow <= included concepts
-		IloLinearIntExpr sum = this.problem.linearIntExpr();
-		for (int i = 0; i < this.concepts.size(); i++) {
-			sum.addTerm(1, this.flowVars[i]);
-			sum.addTerm(-1, this.conceptVars[i]);
+		// per component: edge weight - concept weight + largest concept weight
+		double[] violation = new double[n];
+		int[] k = new int[n];
+		for (int i = 0; i < n; i++)
+			k[i] = -1;
+		for (int i = 0; i < n; i++) {
+			int root = find(parent, i);
+			double c = values[this.conceptVars[i]];
+			violation[root] -= c;
+			if (k[root] < 0 || c > values[this.conceptVars[k[root]]])
+				k[root] = i;
 		}
-		this.problem.addEq(sum, 0);
-
-		// root flow only over root edges
-		for (int i = 0; i < this.edgeVars.length; i++) {
-			IloLinearIntExpr lin = this.problem.linearIntExpr();
-			lin.addTerm(this.concepts.size(), this.edgeVars[i]);
-			this.problem.addLe(this.flowVars[i], lin);
+		for (int i = 0; i < n; i++) {
+			if (find(parent, i) == i)
+				violation[i] += values[this.conceptVars[k[i]]];
+		}
+		for (int e = 0; e < this.edgeVars.length; e++) {
+			int root = find(parent, this.edgeSource[e]);
+			if (root == find(parent, this.edgeTarget[e]))
+				violation[root] += values[this.edgeVars[e]];
 		}
 
-		// flow only if concept included
-		for (int i = 0; i < this.concepts.size(); i++) {
-			IloLinearIntExpr bound = this.problem.linearIntExpr();
-			bound.addTerm(this.concepts.size(), this.conceptVars[i]);
-			this.problem.addLe(this.flowVars[i], bound);
+		// \sum_{ij \in S} y_ij - \sum_{i \in S, i != k} c_i <= 0
+		LinearExpr[] exprs = new LinearExpr[n];
+		for (int i = 0; i < n; i++) {
+			int root = find(parent, i);
+			if (violation[root] > EPS) {
+				if (exprs[root] == null)
+					exprs[root] = new LinearExpr();
+				if (i != k[root])
+					exprs[root].add(-1, this.conceptVars[i]);
+			}
 		}
-		for (int i = 0; i < this.edges.size(); i++) {
-			CPair e = this.edges.get(i);
-			IloLinearIntExpr bound = this.problem.linearIntExpr();
-			bound.addTerm(this.concepts.size(), this.conceptVars[this.conceptIds.get(e.c1)]);
-			this.problem.addLe(this.flowVars[this.concepts.size() + i], bound);
-			bound = this.problem.linearIntExpr();
-			bound.addTerm(this.concepts.size(), this.conceptVars[this.conceptIds.get(e.c2)]);
-			this.problem.addLe(this.flowVars[this.concepts.size() + i], bound);
+		for (int e = 0; e < this.edgeVars.length; e++) {
+			int root = find(parent, this.edgeSource[e]);
+			if (exprs[root] != null && root == find(parent, this.edgeTarget[e]))
+				exprs[root].add(1, this.edgeVars[e]);
 		}
 
-		// concepts consumes one flow
-		for (int i = 0; i < this.concepts.size(); i++) {
-			Concept c = this.concepts.get(i);
-			sum = this.problem.linearIntExpr();
-			for (int j = 0; j < this.edges.size(); j++) {
-				if (this.edges.get(j).c2 == c)
-					sum.addTerm(1, this.flowVars[this.concepts.size() + j]);
-				if (this.edges.get(j).c1 == c)
-					sum.addTerm(-1, this.flowVars[this.concepts.size() + j]);
-			}
-			sum.addTerm(1, this.flowVars[i]);
-			sum.addTerm(-1, this.conceptVars[this.conceptIds.get(c)]);
-			this.problem.addEq(sum, 0);
+		List<Constraint> cuts = new ArrayList<Constraint>();
+		for (LinearExpr expr : exprs) {
+			if (expr != null)
+				cuts.add(new Constraint(expr, Sense.LE, 0));
 		}
+		return cuts;
+	}
 
+	private static int find(int[] parent, int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
 	}
 
 }
@@ -7,7 +7,8 @@ import java.util.List;
 public class Concept implements Comparable<Concept>, Serializable {
 
 	private static final long serialVersionUID = 1L;
-	private static int nextId = 0;
+	// ids are counted per thread -> topics processed in parallel are isolated
+	private static final ThreadLocal<int[]> nextId = ThreadLocal.withInitial(() -> new int[1]);
 
 	public int id;
 	public String name;
@@ -24,13 +25,26 @@ public class Concept implements Comparable<Concept>, Serializable {
 		this.tokenList = tokens;
 		this.type = type;
 		this.confidence = confidence;
-		this.id = nextId++;
+		this.id = nextId.get()[0]++;
 	}
 
 	public Concept(String name) {
 		this(name, new LinkedList<PToken>(), "", 0.0);
 	}
 
+	// restart id sequence of the current thread, e.g. for a new topic
+	public static void resetIds() {
+		nextId.get()[0] = 0;
+	}
+
+	public static int getNextId() {
+		return nextId.get()[0];
+	}
+
+	public static void setNextId(int id) {
+		nextId.get()[0] = id;
+	}
+
 	public int[] getSpan() {
 		int[] span = { Integer.MAX_VALUE, -1 };
 		for (PToken t : this.tokenList) {
@@ -0,0 +1,185 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable concept graph in compressed sparse row format
+ *
+ * Concepts are addressed by their index in the concept list, the neighbors of
+ * concept i are neighbors[offsets[i]] to neighbors[offsets[i+1]-1], with
+ * edgeProps giving the proposition of each entry. Propositions are stored in
+ * both directions, propositions with concepts not in the list are ignored.
+ * Concept weights are copied when the graph is built.
+ */
+public class ConceptGraph {
+
+	private List<Concept> concepts;
+	private List<Proposition> propositions;
+	private Map<Concept, Integer> index;
+
+	private int[] offsets;
+	private int[] neighbors;
+	private int[] edgeProps;
+	private double[] weights;
+
+	public ConceptGraph(List<Concept> concepts, List<Proposition> propositions) {
+		this.concepts = new ArrayList<Concept>(concepts);
+		this.propositions = new ArrayList<Proposition>(propositions);
+
+		int n = this.concepts.size();
+		this.index = new HashMap<Concept, Integer>(n * 2);
+		this.weights = new double[n];
+		for (int i = 0; i < n; i++) {
+			this.index.put(this.concepts.get(i), i);
+			this.weights[i] = this.concepts.get(i).weight;
+		}
+
+		// count degrees, then fill
+		int[] source = new int[this.propositions.size()];
+		int[] target = new int[this.propositions.size()];
+		this.offsets = new int[n + 1];
+		for (int p = 0; p < this.propositions.size(); p++) {
+			source[p] = this.getIndex(this.propositions.get(p).sourceConcept);
+			target[p] = this.getIndex(this.propositions.get(p).targetConcept);
+			if (source[p] >= 0 && target[p] >= 0) {
+				this.offsets[source[p] + 1]++;
+				this.offsets[target[p] + 1]++;
+			}
+		}
+		for (int i = 0; i < n; i++)
+			this.offsets[i + 1] += this.offsets[i];
+
+		this.neighbors = new int[this.offsets[n]];
+		this.edgeProps = new int[this.offsets[n]];
+		int[] next = Arrays.copyOf(this.offsets, n);
+		for (int p = 0; p < this.propositions.size(); p++) {
+			if (source[p] >= 0 && target[p] >= 0) {
+				this.neighbors[next[source[p]]] = target[p];
+				this.edgeProps[next[source[p]]++] = p;
+				this.neighbors[next[target[p]]] = source[p];
+				this.edgeProps[next[target[p]]++] = p;
+			}
+		}
+	}
+
+	public int size() {
+		return this.concepts.size();
+	}
+
+	public Concept getConcept(int i) {
+		return this.concepts.get(i);
+	}
+
+	public List<Concept> getConcepts() {
+		return Collections.unmodifiableList(this.concepts);
+	}
+
+	public List<Proposition> getPropositions() {
+		return Collections.unmodifiableList(this.propositions);
+	}
+
+	public Proposition getProposition(int p) {
+		return this.propositions.get(p);
+	}
+
+	// -1 if not part of the graph
+	public int getIndex(Concept c) {
+		Integer i = this.index.get(c);
+		return i == null ? -1 : i;
+	}
+
+	public double getWeight(int i) {
+		return this.weights[i];
+	}
+
+	// neighbor entries of concept i are in [getStart(i), getEnd(i))
+	public int getStart(int i) {
+		return this.offsets[i];
+	}
+
+	public int getEnd(int i) {
+		return this.offsets[i + 1];
+	}
+
+	public int getNeighbor(int entry) {
+		return this.neighbors[entry];
+	}
+
+	public int getEdgeProposition(int entry) {
+		return this.edgeProps[entry];
+	}
+
+	/**
+	 * Connected components of all concepts, largest first
+	 */
+	public List<int[]> getComponents() {
+		boolean[] active = new boolean[this.size()];
+		Arrays.fill(active, true);
+		return this.getComponents(active);
+	}
+
+	/**
+	 * Connected components of the subgraph induced by the active concepts,
+	 * largest first
+	 */
+	public List<int[]> getComponents(boolean[] active) {
+		List<int[]> components = new ArrayList<int[]>();
+		boolean[] visited = new boolean[this.size()];
+		int[] queue = new int[this.size()];
+		for (int first = 0; first < this.size(); first++) {
+			if (!active[first] || visited[first])
+				continue;
+			int head = 0;
+			int tail = 0;
+			queue[tail++] = first;
+			visited[first] = true;
+			while (head < tail) {
+				int c = queue[head++];
+				for (int e = this.offsets[c]; e < this.offsets[c + 1]; e++) {
+					int nb = this.neighbors[e];
+					if (active[nb] && !visited[nb]) {
+						visited[nb] = true;
+						queue[tail++] = nb;
+					}
+				}
+			}
+			components.add(Arrays.copyOf(queue, tail));
+		}
+		Collections.sort(components, (a, b) -> Integer.compare(b.length, a.length));
+		return components;
+	}
+
+	public Set<Concept> toConcepts(int[] component) {
+		Set<Concept> set = new HashSet<Concept>();
+		for (int i : component)
+			set.add(this.concepts.get(i));
+		return set;
+	}
+
+	/**
+	 * Propositions between concepts of the component, in original order
+	 */
+	public List<Proposition> getPropositions(int[] component) {
+		boolean[] inComp = new boolean[this.size()];
+		for (int i : component)
+			inComp[i] = true;
+		boolean[] selected = new boolean[this.propositions.size()];
+		for (int i : component)
+			for (int e = this.offsets[i]; e < this.offsets[i + 1]; e++)
+				if (inComp[this.neighbors[e]])
+					selected[this.edgeProps[e]] = true;
+		List<Proposition> props = new ArrayList<Proposition>();
+		for (int p = 0; p < selected.length; p++)
+			if (selected[p])
+				props.add(this.propositions.get(p));
+		return props;
+	}
+
+}
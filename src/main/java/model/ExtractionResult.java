@@ -1,9 +1,12 @@
 package model;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -37,11 +40,26 @@ public class ExtractionResult implements Serializable {
 	}
 
 	public static ExtractionResult load(String fileName) {
-		try {
-			ObjectInputStream in = new ObjectInputStream(new FileInputStream(fileName));
-			ExtractionResult res = (ExtractionResult) in.readObject();
-			in.close();
-			return res;
+		return load(fileName, true);
+	}
+
+	/**
+	 * reads the binary format of {@link ExtractionResultFile}, or old files
+	 * written with Java serialization
+	 * 
+	 * @param propositions
+	 *            if false, only concepts and groups are read (binary format)
+	 */
+	public static ExtractionResult load(String fileName, boolean propositions) {
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(fileName), 1 << 16))) {
+			in.mark(4);
+			int magic = in.readInt();
+			in.reset();
+			if (magic == ExtractionResultFile.MAGIC)
+				return new ExtractionResultFile.Reader(in).read(propositions);
+			ObjectInputStream objIn = new ObjectInputStream(in);
+			return (ExtractionResult) objIn.readObject();
 		} catch (Exception e) {
 			e.printStackTrace();
 			return null;
@@ -49,10 +67,9 @@ public class ExtractionResult implements Serializable {
 	}
 
 	public static void save(ExtractionResult res, String fileName) {
-		try {
-			ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(fileName));
-			out.writeObject(res);
-			out.close();
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16))) {
+			new ExtractionResultFile.Writer(out).write(res);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
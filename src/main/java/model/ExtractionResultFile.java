@@ -0,0 +1,323 @@
+package model;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact binary format of {@link ExtractionResult}
+ * 
+ * Sections: concepts, concept groups, propositions, so a reader interested in
+ * concepts and groups can stop before the propositions. Strings, tokens and
+ * concepts are written once, on first use, and referenced by their (varint)
+ * index afterwards, which keeps object identity and shared strings like
+ * document ids. Strings are shared by identity, not by value, as some fields
+ * (e.g. the relation phrase of propositions) are compared with ==. References
+ * are 0 for null, 1 for a new object that follows inline and index + 2 for
+ * known objects.
+ */
+public class ExtractionResultFile {
+
+	public static final int MAGIC = 0x434d5852; // CMXR
+	private static final int VERSION = 2;
+
+	private ExtractionResultFile() {
+	}
+
+	public static class Writer {
+
+		private DataOutputStream out;
+		private Map<String, Integer> strings = new IdentityHashMap<String, Integer>();
+		private Map<PToken, Integer> tokens = new IdentityHashMap<PToken, Integer>();
+		private Map<Concept, Integer> concepts = new IdentityHashMap<Concept, Integer>();
+
+		public Writer(DataOutputStream out) {
+			this.out = out;
+		}
+
+		public void write(ExtractionResult res) throws IOException {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+
+			this.writeSize(res.concepts);
+			if (res.concepts != null)
+				for (Concept c : res.concepts)
+					this.writeConcept(c);
+
+			this.writeSize(res.groupedConcepts);
+			if (res.groupedConcepts != null) {
+				for (List<Concept> group : res.groupedConcepts) {
+					this.writeVarInt(group.size());
+					for (Concept c : group)
+						this.writeConcept(c);
+				}
+			}
+
+			this.writeSize(res.propositions);
+			if (res.propositions != null) {
+				for (Proposition p : res.propositions) {
+					this.writeVarInt(p.id);
+					this.writeConcept(p.sourceConcept);
+					this.writeConcept(p.targetConcept);
+					this.writeString(p.relationPhrase);
+					this.writeTokens(p.relationPhraseToken);
+					this.writeToken(p.headToken);
+					this.writeVarInt(p.headDepDepth);
+					this.writeString(p.context);
+					out.writeDouble(p.confidence);
+					out.writeDouble(p.weight);
+				}
+			}
+			out.flush();
+		}
+
+		private void writeConcept(Concept c) throws IOException {
+			if (c == null) {
+				this.writeVarInt(0);
+				return;
+			}
+			Integer index = this.concepts.get(c);
+			if (index != null) {
+				this.writeVarInt(index + 2);
+				return;
+			}
+			this.concepts.put(c, this.concepts.size());
+			this.writeVarInt(1);
+			this.writeVarInt(c.id);
+			this.writeString(c.name);
+			this.writeString(c.type);
+			out.writeDouble(c.confidence);
+			out.writeDouble(c.weight);
+			this.writeVarInt(c.headDepDepth);
+			this.writeTokens(c.tokenList);
+			this.writeToken(c.headToken);
+		}
+
+		private void writeTokens(List<PToken> tokens) throws IOException {
+			this.writeSize(tokens);
+			if (tokens != null)
+				for (PToken t : tokens)
+					this.writeToken(t);
+		}
+
+		private void writeToken(PToken t) throws IOException {
+			if (t == null) {
+				this.writeVarInt(0);
+				return;
+			}
+			Integer index = this.tokens.get(t);
+			if (index != null) {
+				this.writeVarInt(index + 2);
+				return;
+			}
+			this.tokens.put(t, this.tokens.size());
+			this.writeVarInt(1);
+			this.writeString(t.text);
+			this.writeString(t.pos);
+			this.writeString(t.lemma);
+			this.writeString(t.neTag);
+			this.writeString(t.documentId);
+			this.writeString(t.sentId);
+			this.writeVarInt(t.tokenId);
+			this.writeVarInt(t.start);
+			this.writeVarInt(t.end);
+			this.writeVarInt(t.docLength);
+		}
+
+		private void writeString(String s) throws IOException {
+			if (s == null) {
+				this.writeVarInt(0);
+				return;
+			}
+			Integer index = this.strings.get(s);
+			if (index != null) {
+				this.writeVarInt(index + 2);
+				return;
+			}
+			this.strings.put(s, this.strings.size());
+			// length and UTF-8 bytes, writeUTF is limited to 64KB
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			this.writeVarInt(1);
+			this.writeVarInt(bytes.length);
+			out.write(bytes);
+		}
+
+		// null as 0, otherwise size + 1
+		private void writeSize(Collection<?> c) throws IOException {
+			this.writeVarInt(c == null ? 0 : c.size() + 1);
+		}
+
+		// zigzag encoded, small negative values stay short
+		private void writeVarInt(int v) throws IOException {
+			int z = (v << 1) ^ (v >> 31);
+			while ((z & ~0x7f) != 0) {
+				out.writeByte((z & 0x7f) | 0x80);
+				z >>>= 7;
+			}
+			out.writeByte(z);
+		}
+	}
+
+	public static class Reader {
+
+		private DataInputStream in;
+		private List<String> strings = new ArrayList<String>();
+		private List<PToken> tokens = new ArrayList<PToken>();
+		private List<Concept> concepts = new ArrayList<Concept>();
+
+		public Reader(DataInputStream in) {
+			this.in = in;
+		}
+
+		/**
+		 * @param propositions
+		 *            if false, reading stops after concepts and groups
+		 */
+		public ExtractionResult read(boolean propositions) throws IOException {
+			if (in.readInt() != MAGIC)
+				throw new IOException("not an extraction result file");
+			int version = in.readInt();
+			if (version != VERSION)
+				throw new IOException("unsupported version " + version);
+
+			// constructors count ids, keep the sequence of the current thread
+			int nextConceptId = Concept.getNextId();
+			int nextPropId = Proposition.getNextId();
+			try {
+				List<Concept> conceptList = null;
+				int n = this.readVarInt() - 1;
+				if (n >= 0) {
+					conceptList = new ArrayList<Concept>(n);
+					for (int i = 0; i < n; i++)
+						conceptList.add(this.readConcept());
+				}
+
+				Set<List<Concept>> groups = null;
+				n = this.readVarInt() - 1;
+				if (n >= 0) {
+					List<List<Concept>> groupList = new ArrayList<List<Concept>>(n);
+					for (int i = 0; i < n; i++) {
+						int size = this.readVarInt();
+						List<Concept> group = new ArrayList<Concept>(size);
+						for (int j = 0; j < size; j++)
+							group.add(this.readConcept());
+						groupList.add(group);
+					}
+					groups = new HashSet<List<Concept>>(groupList);
+				}
+
+				List<Proposition> propList = null;
+				n = propositions ? this.readVarInt() - 1 : -1;
+				if (n >= 0) {
+					propList = new ArrayList<Proposition>(n);
+					for (int i = 0; i < n; i++) {
+						int id = this.readVarInt();
+						Concept source = this.readConcept();
+						Concept target = this.readConcept();
+						String relation = this.readString();
+						List<PToken> relationTokens = this.readTokens();
+						PToken head = this.readToken();
+						int depth = this.readVarInt();
+						String context = this.readString();
+						Proposition p = new Proposition(source, target, relation, relationTokens, context,
+								in.readDouble());
+						p.id = id;
+						p.headToken = head;
+						p.headDepDepth = depth;
+						p.weight = in.readDouble();
+						propList.add(p);
+					}
+				}
+
+				return new ExtractionResult(conceptList, propList, groups);
+
+			} finally {
+				Concept.setNextId(nextConceptId);
+				Proposition.setNextId(nextPropId);
+			}
+		}
+
+		private Concept readConcept() throws IOException {
+			int ref = this.readVarInt();
+			if (ref == 0)
+				return null;
+			if (ref > 1)
+				return this.concepts.get(ref - 2);
+			int id = this.readVarInt();
+			String name = this.readString();
+			String type = this.readString();
+			double confidence = in.readDouble();
+			Concept c = new Concept(name, null, type, confidence);
+			this.concepts.add(c);
+			c.id = id;
+			c.weight = in.readDouble();
+			c.headDepDepth = this.readVarInt();
+			c.tokenList = this.readTokens();
+			c.headToken = this.readToken();
+			return c;
+		}
+
+		private List<PToken> readTokens() throws IOException {
+			int n = this.readVarInt() - 1;
+			if (n < 0)
+				return null;
+			List<PToken> list = new ArrayList<PToken>(n);
+			for (int i = 0; i < n; i++)
+				list.add(this.readToken());
+			return list;
+		}
+
+		private PToken readToken() throws IOException {
+			int ref = this.readVarInt();
+			if (ref == 0)
+				return null;
+			if (ref > 1)
+				return this.tokens.get(ref - 2);
+			PToken t = new PToken(this.readString());
+			this.tokens.add(t);
+			t.pos = this.readString();
+			t.lemma = this.readString();
+			t.neTag = this.readString();
+			t.documentId = this.readString();
+			t.sentId = this.readString();
+			t.tokenId = this.readVarInt();
+			t.start = this.readVarInt();
+			t.end = this.readVarInt();
+			t.docLength = this.readVarInt();
+			return t;
+		}
+
+		private String readString() throws IOException {
+			int ref = this.readVarInt();
+			if (ref == 0)
+				return null;
+			if (ref > 1)
+				return this.strings.get(ref - 2);
+			byte[] bytes = new byte[this.readVarInt()];
+			in.readFully(bytes);
+			String s = new String(bytes, StandardCharsets.UTF_8);
+			this.strings.add(s);
+			return s;
+		}
+
+		private int readVarInt() throws IOException {
+			int z = 0;
+			for (int shift = 0;; shift += 7) {
+				int b = in.readUnsignedByte();
+				z |= (b & 0x7f) << shift;
+				if ((b & 0x80) == 0)
+					break;
+			}
+			return (z >>> 1) ^ -(z & 1);
+		}
+	}
+
+}
@@ -7,7 +7,8 @@ import java.util.List;
 public class Proposition implements Serializable {
 
 	private static final long serialVersionUID = 1L;
-	private static int nextId = 0;
+	// ids are counted per thread -> topics processed in parallel are isolated
+	private static final ThreadLocal<int[]> nextId = ThreadLocal.withInitial(() -> new int[1]);
 
 	public int id;
 	public Concept sourceConcept;
@@ -30,13 +31,26 @@ public class Proposition implements Serializable {
 		this.relationPhraseToken = relationToken;
 		this.context = context;
 		this.confidence = confidence;
-		this.id = nextId++;
+		this.id = nextId.get()[0]++;
 	}
 
 	public Proposition(Concept source, Concept target, String link) {
 		this(source, target, link, new LinkedList<PToken>(), "", 0.0);
 	}
 
+	// restart id sequence of the current thread, e.g. for a new topic
+	public static void resetIds() {
+		nextId.get()[0] = 0;
+	}
+
+	public static int getNextId() {
+		return nextId.get()[0];
+	}
+
+	public static void setNextId(int id) {
+		nextId.get()[0] = id;
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (o == null || !(o instanceof Proposition))
@@ -62,9 +62,9 @@ public class ComputeFeatures {
 
 				int topic = Integer.parseInt(clusterFolder.getName());
 
-				// load concepts
+				// load concepts, propositions are not needed
 				String serFileName = folderName + "/" + clusterFolder.getName() + "/" + name + ".groups.ser";
-				ExtractionResult res = ExtractionResult.load(serFileName);
+				ExtractionResult res = ExtractionResult.load(serFileName, false);
 				System.out.println(clusterFolder.getName() + " " + res.concepts.size());
 
 				// extract features
@@ -7,7 +7,11 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 import org.apache.uima.UIMARuntimeException;
 import org.apache.uima.UimaContext;
@@ -22,8 +26,10 @@ import org.apache.uima.util.Level;
 import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import model.Concept;
 import model.ConceptMap;
 import model.PToken;
+import model.Proposition;
 import model.io.ConceptMapWriter;
 import model.io.Format;
 
@@ -56,13 +62,27 @@ public class ConceptMapMining extends JCasConsumer_ImplBase {
 	@ConfigurationParameter(name = PARAM_COMPONENTS)
 	private String[] componentNames;
 
+	public static final String PARAM_PARALLEL = "parallel";
+	@ConfigurationParameter(name = PARAM_PARALLEL, defaultValue = "false")
+	private boolean parallel;
+
+	public static final String PARAM_THREADS = "threads";
+	@ConfigurationParameter(name = PARAM_THREADS, defaultValue = "0")
+	private int threads;
+
 	private List<CmmComponent> components;
 	private Map<String, PToken> tokMap;
+	private ForkJoinPool pool;
 
 	@Override
 	public void initialize(UimaContext context) throws ResourceInitializationException {
 		super.initialize(context);
-		this.tokMap = new HashMap<String, PToken>();
+		if (this.parallel) {
+			this.tokMap = new ConcurrentHashMap<String, PToken>();
+			this.pool = new ForkJoinPool(this.threads > 0 ? this.threads : Runtime.getRuntime().availableProcessors());
+		} else {
+			this.tokMap = new HashMap<String, PToken>();
+		}
 		this.components = new ArrayList<CmmComponent>(this.componentNames.length);
 		for (String componentName : this.componentNames) {
 			if (componentName != null) {
@@ -86,6 +106,10 @@ public class ConceptMapMining extends JCasConsumer_ImplBase {
 		DocumentMetaData meta = (DocumentMetaData) jcas.getDocumentAnnotationFs();
 		this.log("processing " + meta.getDocumentTitle());
 		Collection<Sentence> sentences = JCasUtil.select(jcas, Sentence.class);
+		if (this.parallel) {
+			this.processParallel(jcas, new ArrayList<Sentence>(sentences));
+			return;
+		}
 		int i = 0;
 		for (Sentence sent : sentences) {
 			this.createTokenForSentence(sent, i);
@@ -103,6 +127,78 @@ public class ConceptMapMining extends JCasConsumer_ImplBase {
 		}
 	}
 
+	// all tokens are created upfront, then each component processes all
+	// sentences, with parallel processors on the pool, and in document order
+	private void processParallel(JCas jcas, List<Sentence> sentences) throws AnalysisEngineProcessException {
+		for (int i = 0; i < sentences.size(); i++)
+			this.createTokenForSentence(sentences.get(i), i);
+
+		List<CmmComponent> ordered = new ArrayList<CmmComponent>();
+		List<CmmComponent> delayed = new LinkedList<CmmComponent>();
+		for (CmmComponent component : this.components) {
+			if (component.delaySentenceProcessing())
+				delayed.add(component);
+			else
+				ordered.add(component);
+		}
+		ordered.addAll(delayed);
+
+		for (CmmComponent component : ordered) {
+			if (component instanceof ParallelSentenceProcessor) {
+				this.processSentencesParallel(jcas, sentences, (ParallelSentenceProcessor<?>) component);
+			} else {
+				for (Sentence sent : sentences)
+					component.processSentence(jcas, sent);
+			}
+		}
+	}
+
+	private <R> void processSentencesParallel(JCas jcas, List<Sentence> sentences,
+			ParallelSentenceProcessor<R> processor) throws AnalysisEngineProcessException {
+		processor.prepareDocument(jcas);
+
+		// ids are assigned per sentence, starting from 0 on the worker thread
+		List<SentenceResult<R>> results;
+		try {
+			results = this.pool.submit(() -> sentences.parallelStream()
+					.map(sent -> this.extractFromSentence(jcas, sent, processor)).collect(Collectors.toList())).get();
+		} catch (InterruptedException | ExecutionException e) {
+			throw new AnalysisEngineProcessException(e);
+		}
+
+		// merge in document order -> same ids as sequential processing
+		int conceptOffset = Concept.getNextId();
+		int propOffset = Proposition.getNextId();
+		for (SentenceResult<R> res : results) {
+			processor.mergeSentence(res.result, conceptOffset, propOffset);
+			conceptOffset += res.conceptIds;
+			propOffset += res.propIds;
+		}
+		Concept.setNextId(conceptOffset);
+		Proposition.setNextId(propOffset);
+	}
+
+	private <R> SentenceResult<R> extractFromSentence(JCas jcas, Sentence sent, ParallelSentenceProcessor<R> processor) {
+		Concept.resetIds();
+		Proposition.resetIds();
+		R res = processor.extractFromSentence(jcas, sent);
+		return new SentenceResult<R>(res, Concept.getNextId(), Proposition.getNextId());
+	}
+
+	private static class SentenceResult<R> {
+
+		private R result;
+		private int conceptIds;
+		private int propIds;
+
+		private SentenceResult(R result, int conceptIds, int propIds) {
+			this.result = result;
+			this.conceptIds = conceptIds;
+			this.propIds = propIds;
+		}
+
+	}
+
 	@Override
 	public void collectionProcessComplete() {
 		this.log("processing collection");
@@ -127,12 +223,7 @@ public class ConceptMapMining extends JCasConsumer_ImplBase {
 	public PToken getToken(Token token) {
 		DocumentMetaData meta = (DocumentMetaData) token.getCAS().getDocumentAnnotation();
 		String key = meta.getDocumentId() + "-" + token.getAddress();
-		PToken tok = this.tokMap.get(key);
-		if (tok == null) {
-			tok = new PToken(token);
-			this.tokMap.put(key, tok);
-		}
-		return tok;
+		return this.tokMap.computeIfAbsent(key, k -> new PToken(token));
 	}
 
 	private void createTokenForSentence(Sentence sent, int sentId) {
@@ -146,6 +237,13 @@ public class ConceptMapMining extends JCasConsumer_ImplBase {
 		}
 	}
 
+	@Override
+	public void destroy() {
+		if (this.pool != null)
+			this.pool.shutdown();
+		super.destroy();
+	}
+
 	public <T> T getComponent(Class<T> type) {
 		for (CmmComponent component : components) {
 			if (type.isInstance(component))
@@ -0,0 +1,25 @@
+package pipeline;
+
+import org.apache.uima.jcas.JCas;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+
+/**
+ * Concept map mining components implementing this interface can process the
+ * sentences of a document in parallel
+ * 
+ * Sentences are processed by worker threads and must only read the CAS, the
+ * results are merged afterwards in document order by a single thread.
+ */
+public interface ParallelSentenceProcessor<R> {
+
+	// called once per document before sentences are dispatched
+	public void prepareDocument(JCas jcas);
+
+	// concept and proposition ids are counted from 0 for every sentence
+	public R extractFromSentence(JCas jcas, Sentence sent);
+
+	// offsets have to be added to the ids assigned during extraction
+	public void mergeSentence(R result, int conceptIdOffset, int propositionIdOffset);
+
+}
@@ -2,6 +2,8 @@ package pipeline;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.uima.UIMAException;
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
@@ -11,6 +13,7 @@ import org.apache.uima.fit.factory.CollectionReaderFactory;
 import org.apache.uima.fit.pipeline.SimplePipeline;
 
 import de.tudarmstadt.ukp.dkpro.core.io.bincas.BinaryCasReader;
+import grouping.ConceptGrouperSimLog;
 
 /*
  * Takes OpenIE-processed documents as input, creates concepts and relations 
@@ -24,37 +27,52 @@ public class PipelineGraph {
 
 	public static final String textPattern = "*.oie.bin6";
 
+	// number of topics processed in parallel
+	public static int threads = 1;
+
 	public static void main(String[] args) throws UIMAException, IOException {
 
-		// iterate over topics
+		// collect topics
 		File folder = new File(dataFolder);
+		List<File> topics = new ArrayList<File>();
 		for (File clusterFolder : folder.listFiles()) {
-			if (clusterFolder.isDirectory()) {
+			if (clusterFolder.isDirectory())
+				topics.add(clusterFolder);
+		}
 
-				System.out.println("------------------------------------------------------------");
-				System.out.println(clusterFolder.getName());
-				System.out.println("------------------------------------------------------------");
+		// process topics
+		TopicScheduler scheduler = new TopicScheduler(threads, "documents");
+		scheduler.run(topics, PipelineGraph::processTopic);
+		ConceptGrouperSimLog.saveCaches();
 
-				// read preprocessed documents
-				String docLocation = dataFolder + "/" + clusterFolder.getName();
+	}
 
-				CollectionReaderDescription reader = CollectionReaderFactory.createReaderDescription(
-						BinaryCasReader.class, BinaryCasReader.PARAM_SOURCE_LOCATION, docLocation,
-						BinaryCasReader.PARAM_PATTERNS, textPattern, BinaryCasReader.PARAM_LANGUAGE, "en");
+	private static int processTopic(File clusterFolder) throws UIMAException, IOException {
 
-				// configure concept mapping pipeline
-				String[] pipeline = { "extraction.PropositionExtractor", "grouping.ConceptGrouperSimLog",
-						"grouping.ExtractionResultsSerializer" };
-				String targetLocation = mapFolder + "/" + clusterFolder.getName();
+		System.out.println("------------------------------------------------------------");
+		System.out.println(clusterFolder.getName());
+		System.out.println("------------------------------------------------------------");
 
-				AnalysisEngineDescription cmm = AnalysisEngineFactory.createEngineDescription(ConceptMapMining.class,
-						ConceptMapMining.PARAM_TARGET_LOCATION, targetLocation, ConceptMapMining.PARAM_COMPONENTS,
-						pipeline, ConceptMapMining.PARAM_NAME, mapName);
+		// read preprocessed documents
+		String docLocation = dataFolder + "/" + clusterFolder.getName();
 
-				// run pipeline
-				SimplePipeline.runPipeline(reader, cmm);
-			}
-		}
+		CollectionReaderDescription reader = CollectionReaderFactory.createReaderDescription(BinaryCasReader.class,
+				BinaryCasReader.PARAM_SOURCE_LOCATION, docLocation, BinaryCasReader.PARAM_PATTERNS, textPattern,
+				BinaryCasReader.PARAM_LANGUAGE, "en");
+
+		// configure concept mapping pipeline
+		String[] pipeline = { "extraction.PropositionExtractor", "grouping.ConceptGrouperSimLog",
+				"grouping.ExtractionResultsSerializer" };
+		String targetLocation = mapFolder + "/" + clusterFolder.getName();
+
+		AnalysisEngineDescription cmm = AnalysisEngineFactory.createEngineDescription(ConceptMapMining.class,
+				ConceptMapMining.PARAM_TARGET_LOCATION, targetLocation, ConceptMapMining.PARAM_COMPONENTS, pipeline,
+				ConceptMapMining.PARAM_NAME, mapName);
+
+		// run pipeline
+		SimplePipeline.runPipeline(reader, cmm);
 
+		String suffix = textPattern.substring(textPattern.lastIndexOf("*") + 1);
+		return clusterFolder.listFiles((dir, name) -> name.endsWith(suffix)).length;
 	}
 }
\ No newline at end of file
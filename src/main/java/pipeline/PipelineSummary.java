@@ -2,6 +2,8 @@ package pipeline;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.uima.UIMAException;
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
@@ -24,49 +26,60 @@ public class PipelineSummary {
 	public static final String mapFolder = "data/CMapSummaries/dummy";
 	public static final String mapName = "concept-graph";
 
-	public static int maxConcepts = 25;
+	// number of topics processed in parallel
+	public static int threads = 1;
 
 	public static void main(String[] args) throws UIMAException, IOException {
 
-		// iterate over topics
+		// collect topics
 		File folder = new File(dataFolder);
+		List<File> topics = new ArrayList<File>();
 		for (File clusterFolder : folder.listFiles()) {
 			if (clusterFolder.isDirectory()) {
-
 				if (args.length > 0 && !clusterFolder.getName().equals(args[0]))
 					continue;
+				topics.add(clusterFolder);
+			}
+		}
 
-				System.out.println("------------------------------------------------------------");
-				System.out.println(clusterFolder.getName());
-				System.out.println("------------------------------------------------------------");
+		// process topics
+		TopicScheduler scheduler = new TopicScheduler(threads, "maps");
+		scheduler.run(topics, PipelineSummary::processTopic);
 
-				// read preprocessed documents
-				String docLocation = dataFolder + "/" + clusterFolder.getName();
+	}
 
-				// only dummy here!
-				CollectionReaderDescription reader = CollectionReaderFactory.createReaderDescription(
-						BinaryCasReader.class, BinaryCasReader.PARAM_SOURCE_LOCATION, docLocation,
-						BinaryCasReader.PARAM_PATTERNS, "", BinaryCasReader.PARAM_LANGUAGE, "en");
+	private static int processTopic(File clusterFolder) throws UIMAException, IOException {
 
-				// configure concept mapping pipeline
-				String[] pipeline = { "scoring.concepts.ExtractionResultsDeserializer",
-						"scoring.concepts.ConceptScorerRanking", "mapbuilding.MapBuilderILP" };
-				String targetLocation = mapFolder + "/" + clusterFolder.getName();
+		System.out.println("------------------------------------------------------------");
+		System.out.println(clusterFolder.getName());
+		System.out.println("------------------------------------------------------------");
 
-				// determine target size
-				File goldFile = new File(docLocation + "/" + clusterFolder.getName() + ".cmap");
-				ConceptMap goldMap = ConceptMapReader.readFromFile(goldFile, Format.TSV);
-				maxConcepts = goldMap.getConcepts().size();
+		// read preprocessed documents
+		String docLocation = dataFolder + "/" + clusterFolder.getName();
 
-				AnalysisEngineDescription cmm = AnalysisEngineFactory.createEngineDescription(ConceptMapMining.class,
-						ConceptMapMining.PARAM_TARGET_LOCATION, targetLocation, ConceptMapMining.PARAM_COMPONENTS,
-						pipeline, ConceptMapMining.PARAM_MAX_CONCEPTS, maxConcepts, ConceptMapMining.PARAM_NAME,
-						mapName, ConceptMapMining.PARAM_PRINT_MAPS, false);
+		// only dummy here!
+		CollectionReaderDescription reader = CollectionReaderFactory.createReaderDescription(BinaryCasReader.class,
+				BinaryCasReader.PARAM_SOURCE_LOCATION, docLocation, BinaryCasReader.PARAM_PATTERNS, "",
+				BinaryCasReader.PARAM_LANGUAGE, "en");
 
-				// run pipeline
-				SimplePipeline.runPipeline(reader, cmm);
-			}
-		}
+		// configure concept mapping pipeline
+		String[] pipeline = { "scoring.concepts.ExtractionResultsDeserializer", "scoring.concepts.ConceptScorerRanking",
+				"mapbuilding.MapBuilderILP" };
+		String targetLocation = mapFolder + "/" + clusterFolder.getName();
+
+		// determine target size
+		File goldFile = new File(docLocation + "/" + clusterFolder.getName() + ".cmap");
+		ConceptMap goldMap = ConceptMapReader.readFromFile(goldFile, Format.TSV);
+		int maxConcepts = goldMap.getConcepts().size();
+
+		AnalysisEngineDescription cmm = AnalysisEngineFactory.createEngineDescription(ConceptMapMining.class,
+				ConceptMapMining.PARAM_TARGET_LOCATION, targetLocation, ConceptMapMining.PARAM_COMPONENTS, pipeline,
+				ConceptMapMining.PARAM_MAX_CONCEPTS, maxConcepts, ConceptMapMining.PARAM_NAME, mapName,
+				ConceptMapMining.PARAM_PRINT_MAPS, false);
+
+		// run pipeline
+		SimplePipeline.runPipeline(reader, cmm);
 
+		return 1;
 	}
 }
\ No newline at end of file
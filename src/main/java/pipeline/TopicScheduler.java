@@ -0,0 +1,89 @@
+package pipeline;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import model.Concept;
+import model.Proposition;
+
+/**
+ * Runs independent per-topic pipelines concurrently on a bounded worker pool
+ *
+ * Every topic is processed completely by one worker thread. Before a topic
+ * starts, the thread's concept and proposition id sequences are reset, so ids
+ * of a topic do not depend on which or how many topics ran before it.
+ */
+public class TopicScheduler {
+
+	private int threads;
+	private String unit;
+
+	public TopicScheduler(int threads, String unit) {
+		this.threads = Math.max(1, threads);
+		this.unit = unit;
+	}
+
+	public void run(List<File> topics, TopicTask task) {
+
+		long start = System.currentTimeMillis();
+		Logger.getGlobal().log(Level.INFO, "processing " + topics.size() + " topics with " + this.threads + " threads");
+
+		ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+		List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+		for (File topic : topics)
+			results.add(pool.submit(() -> this.runTopic(topic, task)));
+		pool.shutdown();
+
+		// wait for all topics, failures do not stop the others
+		int done = 0;
+		int items = 0;
+		for (int i = 0; i < topics.size(); i++) {
+			try {
+				items += results.get(i).get();
+				done++;
+			} catch (ExecutionException e) {
+				System.err.println("topic " + topics.get(i).getName() + " failed");
+				e.getCause().printStackTrace();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				pool.shutdownNow();
+				break;
+			}
+		}
+
+		double duration = (System.currentTimeMillis() - start) / 1000.0;
+		Logger.getGlobal().log(Level.INFO, String.format("%d/%d topics, %d %s in %.1fs (%.2f topics/min, %.2f %s/s)",
+				done, topics.size(), items, this.unit, duration, done / duration * 60, items / duration, this.unit));
+	}
+
+	private int runTopic(File topic, TopicTask task) throws Exception {
+
+		Concept.resetIds();
+		Proposition.resetIds();
+
+		long start = System.currentTimeMillis();
+		int items = task.process(topic);
+		double duration = (System.currentTimeMillis() - start) / 1000.0;
+
+		Logger.getGlobal().log(Level.INFO, String.format("topic %s: %d %s in %.1fs (%.2f %s/s)", topic.getName(), items,
+				this.unit, duration, items / duration, this.unit));
+		return items;
+	}
+
+	/**
+	 * Processing of a single topic, returns the number of processed items
+	 */
+	public interface TopicTask {
+
+		public int process(File topicFolder) throws Exception;
+
+	}
+
+}
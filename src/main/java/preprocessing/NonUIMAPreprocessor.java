@@ -1,11 +1,29 @@
 package preprocessing;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import edu.stanford.nlp.ie.crf.CRFClassifier;
 import edu.stanford.nlp.ling.CoreAnnotations;
@@ -29,90 +47,240 @@ import util.Stopwords;
 /**
  * Standalone preprocessing for data not part of UIMA Pipeline
  * 
+ * Thread-safe: the tagger and NER models are loaded once and shared, as they
+ * only read their parameters when labeling. Lemmatizers keep state, each call
+ * borrows one from a bounded pool. Up to poolSize are created lazily, further
+ * callers wait until one is returned.
+ * 
  * @author falke
  *
  */
 public class NonUIMAPreprocessor {
 
-	private static NonUIMAPreprocessor instance;
+	private static int poolSize = Math.min(4, Runtime.getRuntime().availableProcessors());
+	private static String lemmaCacheFile = "data/grouping/cache/lemmas.txt";
+	private static volatile NonUIMAPreprocessor instance;
+
+	// lemmas by lowercased text and tag, marker if the text is not one token
+	private static final String NO_LEMMA = "";
+	private Map<String, String> lemmaCache = new ConcurrentHashMap<String, String>();
 
-	private CRFClassifier<CoreLabel> ner;
-	private MorphaAnnotator lemmatizer;
-	private MaxentTagger tagger;
+	private volatile MaxentTagger tagger;
+	private volatile CRFClassifier<CoreLabel> ner;
+	private BlockingQueue<Lemmatizer> pool = new LinkedBlockingQueue<Lemmatizer>();
+	private int created;
 	private TokenizerFactory<CoreLabel> tokFactory;
 	private Stopwords sw;
 	private Set<String> posPuncSet;
 
 	private NonUIMAPreprocessor() {
 		this.tokFactory = PTBTokenizer.factory(new CoreLabelTokenFactory(), "");
-		this.lemmatizer = new MorphaAnnotator(false);
 		this.sw = new Stopwords("lists/stopwords_en_semilar.txt");
 		this.posPuncSet = new HashSet<String>(Arrays.asList(posPunc));
+		this.loadLemmaCache();
 	}
 
 	public static NonUIMAPreprocessor getInstance() {
-		if (instance == null)
-			instance = new NonUIMAPreprocessor();
-		return instance;
+		NonUIMAPreprocessor prep = instance;
+		if (prep == null) {
+			synchronized (NonUIMAPreprocessor.class) {
+				if (instance == null)
+					instance = new NonUIMAPreprocessor();
+				prep = instance;
+			}
+		}
+		return prep;
 	}
 
 	public Concept preprocess(Concept c) {
+		List<Concept> concepts = new ArrayList<Concept>(1);
+		concepts.add(c);
+		this.preprocess(concepts);
+		return c;
+	}
+
+	/**
+	 * tokenizes, tags and lemmatizes all concepts, the lemmatizer runs once on
+	 * all of them
+	 */
+	public List<Concept> preprocess(List<Concept> concepts) {
 
-		if (this.tagger == null)
-			this.tagger = new MaxentTagger("ext_models/pos_tagger/english-left3words-distsim.tagger");
-		if (this.ner == null)
-			this.ner = CRFClassifier.getClassifierNoExceptions("ext_models/ner/english.all.3class.distsim.crf.ser.gz");
-
-		List<CoreLabel> words = tokFactory.getTokenizer(new StringReader(c.name)).tokenize();
-		tagger.tagCoreLabels(words);
-		words = ner.classifySentence(words);
-		words = this.addLemmas(words);
-
-		List<PToken> tokens = new ArrayList<PToken>();
-		for (CoreLabel word : words) {
-			PToken t = new PToken(word.originalText());
-			t.pos = word.tag();
-			t.neTag = word.get(CoreAnnotations.AnswerAnnotation.class);
-			t.lemma = word.get(LemmaAnnotation.class);
-			tokens.add(t);
+		MaxentTagger tagger = this.getTagger();
+		CRFClassifier<CoreLabel> ner = this.getNer();
+		List<List<CoreLabel>> sentences = new ArrayList<List<CoreLabel>>(concepts.size());
+		for (Concept c : concepts) {
+			List<CoreLabel> words = tokFactory.getTokenizer(new StringReader(c.name)).tokenize();
+			tagger.tagCoreLabels(words);
+			sentences.add(ner.classifySentence(words));
 		}
-		c.tokenList = tokens;
 
-		return c;
+		Lemmatizer lemmatizer = this.acquire();
+		try {
+			lemmatizer.addLemmas(sentences);
+
+			for (int i = 0; i < concepts.size(); i++) {
+				List<PToken> tokens = new ArrayList<PToken>();
+				for (CoreLabel word : sentences.get(i)) {
+					PToken t = new PToken(word.originalText());
+					t.pos = word.tag();
+					t.neTag = word.get(CoreAnnotations.AnswerAnnotation.class);
+					t.lemma = word.get(LemmaAnnotation.class);
+					tokens.add(t);
+				}
+				concepts.get(i).tokenList = tokens;
+			}
+		} finally {
+			this.release(lemmatizer);
+		}
+
+		return concepts;
 	}
 
-	private List<CoreLabel> addLemmas(List<CoreLabel> words) {
+	private MaxentTagger getTagger() {
+		if (this.tagger == null) {
+			synchronized (this) {
+				if (this.tagger == null)
+					this.tagger = new MaxentTagger("ext_models/pos_tagger/english-left3words-distsim.tagger");
+			}
+		}
+		return this.tagger;
+	}
 
-		Annotation sent = new Annotation("");
-		sent.set(TokensAnnotation.class, words);
-		List<CoreMap> sentences = new ArrayList<>();
-		sentences.add(sent);
-		Annotation document = new Annotation("");
-		document.set(SentencesAnnotation.class, sentences);
+	private CRFClassifier<CoreLabel> getNer() {
+		if (this.ner == null) {
+			synchronized (this) {
+				if (this.ner == null)
+					this.ner = CRFClassifier
+							.getClassifierNoExceptions("ext_models/ner/english.all.3class.distsim.crf.ser.gz");
+			}
+		}
+		return this.ner;
+	}
 
-		lemmatizer.annotate(document);
+	private Lemmatizer acquire() {
+		Lemmatizer lemmatizer = this.pool.poll();
+		if (lemmatizer != null)
+			return lemmatizer;
+		synchronized (this) {
+			if (this.created < poolSize) {
+				this.created++;
+				return new Lemmatizer();
+			}
+		}
+		try {
+			return this.pool.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while waiting for lemmatizer", e);
+		}
+	}
 
-		return words;
+	private void release(Lemmatizer lemmatizer) {
+		this.pool.offer(lemmatizer);
 	}
 
 	public PToken lemmatize(PToken t) {
+		List<PToken> tokens = new ArrayList<PToken>(1);
+		tokens.add(t);
+		this.lemmatize(tokens);
+		return t;
+	}
+
+	/**
+	 * lemmatizes single-word tokens, text and tag pairs not seen before are
+	 * lemmatized together in one pass and cached
+	 */
+	public void lemmatize(Collection<PToken> tokens) {
+
+		// unique new keys
+		List<String> keys = new ArrayList<String>();
+		List<List<CoreLabel>> sentences = new ArrayList<List<CoreLabel>>();
+		Set<String> seen = new HashSet<String>();
+		for (PToken t : tokens) {
+			String key = lemmaKey(t);
+			if (this.lemmaCache.containsKey(key) || !seen.add(key))
+				continue;
 
-		List<CoreLabel> words = tokFactory.getTokenizer(new StringReader(t.text.toLowerCase())).tokenize();
-		if (words.size() > 1)
-			return t;
+			String text = t.text.toLowerCase();
+			List<CoreLabel> words = tokFactory.getTokenizer(new StringReader(text)).tokenize();
+			if (words.size() > 1) {
+				this.lemmaCache.put(key, NO_LEMMA);
+				continue;
+			}
 
-		words.get(0).setTag(t.pos);
-		if (t.pos.startsWith("N") && t.pos.contains("P")) {
-			String tag = t.pos.replace("P", "");
-			if (t.text.toLowerCase().charAt(t.text.length() - 1) == 's')
-				tag = "NNS";
-			words.get(0).setTag(tag);
+			words.get(0).setTag(t.pos);
+			if (t.pos.startsWith("N") && t.pos.contains("P")) {
+				String tag = t.pos.replace("P", "");
+				if (text.charAt(text.length() - 1) == 's')
+					tag = "NNS";
+				words.get(0).setTag(tag);
+			}
+			keys.add(key);
+			sentences.add(words);
 		}
 
-		words = this.addLemmas(words);
-		t.lemma = words.get(0).get(LemmaAnnotation.class);
+		if (!sentences.isEmpty()) {
+			Lemmatizer lemmatizer = this.acquire();
+			try {
+				lemmatizer.addLemmas(sentences);
+			} finally {
+				this.release(lemmatizer);
+			}
+			for (int i = 0; i < keys.size(); i++) {
+				String lemma = sentences.get(i).get(0).get(LemmaAnnotation.class);
+				this.lemmaCache.put(keys.get(i), lemma != null ? lemma : NO_LEMMA);
+			}
+		}
 
-		return t;
+		for (PToken t : tokens) {
+			String lemma = this.lemmaCache.get(lemmaKey(t));
+			if (!lemma.equals(NO_LEMMA))
+				t.lemma = lemma;
+		}
+	}
+
+	private static String lemmaKey(PToken t) {
+		return t.text.toLowerCase() + "\t" + t.pos;
+	}
+
+	private void loadLemmaCache() {
+		File file = new File(lemmaCacheFile);
+		if (!file.exists())
+			return;
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+			String line = null;
+			while ((line = reader.readLine()) != null) {
+				int split = line.lastIndexOf('\t');
+				if (split > 0)
+					this.lemmaCache.put(line.substring(0, split), line.substring(split + 1));
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		System.out.println("lemma cache loaded: " + this.lemmaCache.size());
+	}
+
+	// lines of text, tag and lemma, written to a temporary file that is moved
+	public synchronized void saveLemmaCache() {
+		File file = new File(lemmaCacheFile);
+		File tmp = new File(lemmaCacheFile + "." + UUID.randomUUID() + ".tmp");
+		if (file.getParentFile() != null)
+			file.getParentFile().mkdirs();
+		try {
+			try (PrintWriter writer = new PrintWriter(
+					new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+				for (Map.Entry<String, String> e : this.lemmaCache.entrySet())
+					writer.println(e.getKey() + "\t" + e.getValue());
+				if (writer.checkError())
+					throw new IOException("cannot write lemma cache " + tmp);
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			e.printStackTrace();
+			tmp.delete();
+		}
 	}
 
 	public Sentence getSemilarSentence(Concept c) {
@@ -135,6 +303,35 @@ public class NonUIMAPreprocessor {
 		return sentence;
 	}
 
+	// Semilar representation of each concept, built once per concept
+	public Map<Concept, Sentence> getSemilarSentences(Collection<Concept> concepts) {
+		Map<Concept, Sentence> sentences = new HashMap<Concept, Sentence>(concepts.size() * 2);
+		for (Concept c : concepts)
+			if (!sentences.containsKey(c))
+				sentences.put(c, this.getSemilarSentence(c));
+		return sentences;
+	}
+
+	// used by one thread at a time
+	private static class Lemmatizer {
+
+		private MorphaAnnotator lemmatizer = new MorphaAnnotator(false);
+
+		private void addLemmas(List<List<CoreLabel>> words) {
+
+			List<CoreMap> sentences = new ArrayList<>();
+			for (List<CoreLabel> sentWords : words) {
+				Annotation sent = new Annotation("");
+				sent.set(TokensAnnotation.class, sentWords);
+				sentences.add(sent);
+			}
+			Annotation document = new Annotation("");
+			document.set(SentencesAnnotation.class, sentences);
+
+			lemmatizer.annotate(document);
+		}
+	}
+
 	private static final String[] posPunc = { "!", "#", "$", "''", "(", ")", ",", "-LRB-", "-RRB-", ".", ":", "?",
 			"``" };
 }
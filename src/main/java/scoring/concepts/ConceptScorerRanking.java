@@ -1,7 +1,5 @@
 package scoring.concepts;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -13,15 +11,14 @@ import pipeline.Extractor;
 import weka.classifiers.AbstractClassifier;
 import weka.core.Instances;
 import weka.core.SerializationHelper;
-import weka.core.converters.ArffLoader.ArffReader;
 import weka.filters.Filter;
 import weka.filters.unsupervised.attribute.Remove;
-import weka.filters.unsupervised.instance.RemoveRange;
 
 public class ConceptScorerRanking extends CmmComponent {
 
 	private static final String arffFileName = "data/CMapSummaries/dummy/concept-graph.arff";
 	private static final String modelFile = "models/scoring_noun10conjarg2_sim5log-gopt_SVMRankC30_RepDisc.model";
+	private static RankingSVM sharedClassifier;
 
 	@Override
 	public void processCollection() {
@@ -33,60 +30,71 @@ public class ConceptScorerRanking extends CmmComponent {
 		List<Concept> concepts = exComp.getConcepts();
 		this.parent.log(this, "scoring components: " + concepts.size());
 
-		// load arff with features
-		Instances data = null;
+		// load classifier
+		AbstractClassifier clf = getClassifier();
+
+		// features of current topic, full dataset is converted and mapped once
 		Map<Integer, Integer> conceptId2Index = new HashMap<Integer, Integer>();
+		double[] scores = null;
 		try {
-			// load full dataset
-			ArffReader arff = new ArffReader(new BufferedReader(new FileReader(arffFileName)));
-			data = arff.getData();
-			// remove likert label
-			if (data.attribute(data.numAttributes() - 1).name().equals("~_label_likert")) {
-				Remove r = new Remove();
-				r.setAttributeIndices("last");
-				r.setInputFormat(data);
-				data = Filter.useFilter(data, r);
-			}
-			data.setClassIndex(data.numAttributes() - 1);
-			// subset to current topic
-			String range = ""; // -> 1-based!
-			for (int i = 0; i < data.numInstances(); i++) {
-				if (topic.equals(Integer.toString((int) data.instance(i).value(1)))) {
-					range += (i + 1) + ",";
+			FeatureStore store = FeatureStore.get(arffFileName);
+			int topicId = Integer.parseInt(topic);
+
+			if (clf instanceof RankingSVM) {
+				// linear model, directly on the feature values
+				int numAtts = store.numAttributes();
+				if (store.getHeader().attribute(numAtts - 1).name().equals("~_label_likert"))
+					numAtts--;
+				double[] rows = store.getValues(topicId);
+				scores = new double[rows.length / store.numAttributes()];
+				((RankingSVM) clf).score(rows, store.numAttributes(), numAtts, scores);
+				for (int i = 0; i < scores.length; i++)
+					conceptId2Index.put((int) rows[i * store.numAttributes()], i);
+
+			} else {
+				Instances data = store.getInstances(topicId);
+				// remove likert label
+				if (data.attribute(data.numAttributes() - 1).name().equals("~_label_likert")) {
+					Remove r = new Remove();
+					r.setAttributeIndices("last");
+					r.setInputFormat(data);
+					data = Filter.useFilter(data, r);
 				}
-			}
-			RemoveRange remRange = new RemoveRange();
-			remRange.setInstancesIndices(range.substring(0, range.length() - 1));
-			remRange.setInvertSelection(true);
-			remRange.setInputFormat(data);
-			data = Filter.useFilter(data, remRange);
-			// build id mapping
-			for (int i = 0; i < data.numInstances(); i++) {
-				conceptId2Index.put((int) data.instance(i).value(0), i);
+				data.setClassIndex(data.numAttributes() - 1);
+				// build id mapping
+				for (int i = 0; i < data.numInstances(); i++) {
+					conceptId2Index.put((int) data.instance(i).value(0), i);
+				}
+				// apply classifier
+				double[][] preds = clf.distributionsForInstances(data);
+				scores = new double[preds.length];
+				for (int i = 0; i < preds.length; i++)
+					scores[i] = preds[i][1];
 			}
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 
-		// load classifier
+		for (Concept c : concepts)
+			c.weight = scores[conceptId2Index.get(c.id)];
+
+		Collections.sort(concepts);
+	}
+
+	// a RankingSVM scores without state and is shared by all topics, other
+	// classifiers are not thread-safe and loaded per topic
+	private static synchronized AbstractClassifier getClassifier() {
+		if (sharedClassifier != null)
+			return sharedClassifier;
 		AbstractClassifier clf = null;
 		try {
 			clf = (AbstractClassifier) SerializationHelper.read(modelFile);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
-
-		// apply classifier
-		double[][] preds = null;
-		try {
-			preds = clf.distributionsForInstances(data);
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
-		for (Concept c : concepts)
-			c.weight = preds[conceptId2Index.get(c.id)][1];
-
-		Collections.sort(concepts);
+		if (clf instanceof RankingSVM)
+			sharedClassifier = (RankingSVM) clf;
+		return clf;
 	}
 
 }
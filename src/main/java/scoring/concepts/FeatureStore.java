@@ -0,0 +1,217 @@
+package scoring.concepts;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.carrotsearch.hppc.IntArrayList;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.converters.ArffLoader.ArffReader;
+
+/**
+ * Binary, memory-mapped version of a feature ARFF file with rows grouped by
+ * topic
+ * 
+ * Layout: ARFF header (as text), number of rows and attributes, index of
+ * topics with their first row and row count, then all values as doubles, row
+ * by row. The topic is read from the second attribute, as in the ARFF files
+ * written by FeatureExtractor. The binary file is created from the ARFF once
+ * (and again if the ARFF changes) and shared by all users in the JVM. Values
+ * are mapped in chunks of whole rows, so files can be larger than 2GB.
+ */
+public class FeatureStore {
+
+	private static final int MAGIC = 0x46454154; // FEAT
+	private static final int TOPIC_ATT = 1;
+	private static final int CHUNK_BYTES = 1 << 30;
+
+	private static Map<String, FeatureStore> loaded = new HashMap<String, FeatureStore>();
+
+	private Instances header;
+	private int numRows;
+	private int numAtts;
+	private Map<Integer, int[]> topics = new HashMap<Integer, int[]>();
+	private DoubleBuffer[] chunks;
+	private int rowsPerChunk;
+
+	/**
+	 * store for the given ARFF file, converted on first use
+	 */
+	public static FeatureStore get(String arffFileName) throws IOException {
+		synchronized (loaded) {
+			FeatureStore store = loaded.get(arffFileName);
+			if (store == null) {
+				File arff = new File(arffFileName);
+				File bin = new File(arffFileName.replaceAll("\\.arff$", "") + ".features.bin");
+				if (!bin.exists() || bin.lastModified() < arff.lastModified())
+					convert(arff, bin);
+				store = new FeatureStore(bin);
+				loaded.put(arffFileName, store);
+			}
+			return store;
+		}
+	}
+
+	private FeatureStore(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			if (raf.readInt() != MAGIC)
+				throw new IOException("not a feature store: " + file);
+			byte[] headerBytes = new byte[raf.readInt()];
+			raf.readFully(headerBytes);
+			String arffHeader = new String(headerBytes, StandardCharsets.UTF_8);
+			this.header = new ArffReader(new StringReader(arffHeader), 0).getStructure();
+			this.numRows = raf.readInt();
+			this.numAtts = raf.readInt();
+			int numTopics = raf.readInt();
+			for (int t = 0; t < numTopics; t++) {
+				int topic = raf.readInt();
+				this.topics.put(topic, new int[] { raf.readInt(), raf.readInt() });
+			}
+
+			// values, rows never cross chunks
+			long start = (raf.getFilePointer() + 7) / 8 * 8;
+			long rowBytes = 8L * this.numAtts;
+			if (start + this.numRows * rowBytes > raf.length())
+				throw new IOException("feature store truncated: " + file);
+			this.rowsPerChunk = (int) Math.max(1, CHUNK_BYTES / rowBytes);
+			this.chunks = new DoubleBuffer[(this.numRows + this.rowsPerChunk - 1) / this.rowsPerChunk];
+			for (int c = 0; c < this.chunks.length; c++) {
+				int rows = Math.min(this.rowsPerChunk, this.numRows - c * this.rowsPerChunk);
+				long offset = start + (long) c * this.rowsPerChunk * rowBytes;
+				this.chunks[c] = raf.getChannel().map(MapMode.READ_ONLY, offset, rows * rowBytes).asDoubleBuffer();
+			}
+		}
+	}
+
+	public Instances getHeader() {
+		return new Instances(this.header, 0);
+	}
+
+	public int numAttributes() {
+		return this.numAtts;
+	}
+
+	// first row and number of rows of the topic, null if unknown
+	public int[] getRange(int topic) {
+		return this.topics.get(topic);
+	}
+
+	// topics in the store
+	public List<Integer> getTopics() {
+		return new ArrayList<Integer>(this.topics.keySet());
+	}
+
+	public double value(int row, int att) {
+		return this.chunks[row / this.rowsPerChunk].get((row % this.rowsPerChunk) * this.numAtts + att);
+	}
+
+	/**
+	 * copies the values of the topic into an array, row by row
+	 */
+	public double[] getValues(int topic) {
+		int[] range = this.topics.get(topic);
+		if (range == null)
+			return new double[0];
+		if ((long) range[1] * this.numAtts > Integer.MAX_VALUE)
+			throw new IllegalStateException("topic " + topic + " too large for one array: " + range[1] + " rows");
+		double[] rows = new double[range[1] * this.numAtts];
+		for (int row = range[0], done = 0; done < range[1];) {
+			DoubleBuffer chunk = this.chunks[row / this.rowsPerChunk].duplicate();
+			int n = Math.min(range[1] - done, this.rowsPerChunk - row % this.rowsPerChunk);
+			chunk.position((row % this.rowsPerChunk) * this.numAtts);
+			chunk.get(rows, done * this.numAtts, n * this.numAtts);
+			row += n;
+			done += n;
+		}
+		return rows;
+	}
+
+	/**
+	 * instances of one topic, in the order of the ARFF file
+	 */
+	public Instances getInstances(int topic) {
+		int[] range = this.topics.get(topic);
+		int size = range == null ? 0 : range[1];
+		Instances data = new Instances(this.header, size);
+		double[] rows = this.getValues(topic);
+		for (int i = 0; i < size; i++) {
+			double[] row = new double[this.numAtts];
+			System.arraycopy(rows, i * this.numAtts, row, 0, this.numAtts);
+			data.add(new DenseInstance(1, row));
+		}
+		return data;
+	}
+
+	public static void convert(File arff, File bin) throws IOException {
+
+		System.out.println("converting " + arff);
+		Instances data = new ArffReader(new BufferedReader(new FileReader(arff))).getData();
+		for (int a = 0; a < data.numAttributes(); a++) {
+			Attribute att = data.attribute(a);
+			if (!att.isNumeric() && !att.isNominal())
+				throw new IOException("only numeric and nominal attributes supported: " + att.name());
+		}
+
+		// rows by topic, keeping the original order within topics
+		TreeMap<Integer, IntArrayList> topicRows = new TreeMap<Integer, IntArrayList>();
+		for (int i = 0; i < data.numInstances(); i++) {
+			int topic = (int) data.instance(i).value(TOPIC_ATT);
+			IntArrayList rows = topicRows.get(topic);
+			if (rows == null) {
+				rows = new IntArrayList();
+				topicRows.put(topic, rows);
+			}
+			rows.add(i);
+		}
+
+		File tmp = new File(bin.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+			byte[] headerBytes = new Instances(data, 0).toString().getBytes(StandardCharsets.UTF_8);
+			out.writeInt(MAGIC);
+			out.writeInt(headerBytes.length);
+			out.write(headerBytes);
+			out.writeInt(data.numInstances());
+			out.writeInt(data.numAttributes());
+			out.writeInt(topicRows.size());
+			int start = 0;
+			for (Map.Entry<Integer, IntArrayList> e : topicRows.entrySet()) {
+				out.writeInt(e.getKey());
+				out.writeInt(start);
+				out.writeInt(e.getValue().size());
+				start += e.getValue().size();
+			}
+			for (int p = out.size(); p % 8 != 0; p++)
+				out.writeByte(0);
+			for (IntArrayList rows : topicRows.values()) {
+				for (int k = 0; k < rows.size(); k++) {
+					double[] row = data.instance(rows.get(k)).toDoubleArray();
+					for (double v : row)
+						out.writeDouble(v);
+				}
+			}
+		}
+		if (bin.exists())
+			bin.delete();
+		if (!tmp.renameTo(bin))
+			throw new IOException("cannot write " + bin);
+		System.out.println("features: " + data.numInstances() + " rows, " + topicRows.size() + " topics");
+	}
+
+}
@@ -46,13 +46,39 @@ public class RankingSVM extends AbstractClassifier {
 		return score;
 	}
 
+	/**
+	 * scores rows of a row-major matrix, without Weka instances
+	 * 
+	 * Terms are added in the same order as for instances, so scores are
+	 * identical.
+	 * 
+	 * @param rows
+	 *            values, rowLength per row
+	 * @param rowLength
+	 *            number of values per row
+	 * @param numAttributes
+	 *            attributes of the rows used by the model, including id, topic
+	 *            and class label (further columns are ignored)
+	 * @param scores
+	 *            output, one per row
+	 */
+	public double[] score(double[] rows, int rowLength, int numAttributes, double[] scores) {
+		double[] w = this.weights;
+		for (int r = 0, offset = 0; r < scores.length; r++, offset += rowLength) {
+			double score = 1 * w[0];
+			for (int i = 2; i < numAttributes - 1; i++)
+				score += w[i - 1] * rows[offset + i];
+			scores[r] = score;
+		}
+		return scores;
+	}
+
 	@Override
 	public double[][] distributionsForInstances(Instances batch) {
 
 		double[][] dists = new double[batch.numInstances()][2];
 		for (int i = 0; i < batch.numInstances(); i++) {
 			Instance ins = batch.instance(i);
-			dists[i] = new double[2];
 			dists[i][1] = this.scoreInstance(ins);
 		}
 
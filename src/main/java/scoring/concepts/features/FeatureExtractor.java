@@ -10,6 +10,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
@@ -35,6 +36,7 @@ import util.Muter;
 import util.Stopwords;
 import util.features.Feature;
 import util.features.FeatureContainer;
+import util.features.FeatureContainer.Aggregation;
 import weka.core.Instances;
 
 /**
@@ -46,6 +48,8 @@ import weka.core.Instances;
 public class FeatureExtractor implements Serializable {
 
 	private static final long serialVersionUID = 1L;
+	private static boolean parallel = false;
+
 	private List<String> featureNames;
 	private transient FeatureContainer<Concept> featContainer;
 	private boolean isTraining;
@@ -59,6 +63,7 @@ public class FeatureExtractor implements Serializable {
 	private transient ConcFeatures conc;
 	private transient LIWCFeatures liwc;
 	private transient FrequencyProvider web1tFreq;
+	private transient Map<Integer, Concept> topicConcepts;
 
 	public FeatureExtractor() {
 		this.featureNames = new ArrayList<String>();
@@ -67,7 +72,7 @@ public class FeatureExtractor implements Serializable {
 	}
 
 	public void init(String baseFolder, String graphFile) {
-		this.featContainer = new FeatureContainer<Concept>();
+		this.featContainer = newContainer();
 		this.baseFolder = baseFolder;
 		this.graphFile = graphFile;
 		this.topicFile = new File(baseFolder).getParent() + "/topics.tsv";
@@ -76,6 +81,7 @@ public class FeatureExtractor implements Serializable {
 		this.conc = new ConcFeatures();
 		this.liwc = new LIWCFeatures();
 		this.web1tFreq = new FrequencyProvider(Source.WEB1T);
+		this.topicConcepts = new ConcurrentHashMap<Integer, Concept>();
 	}
 
 	public void collectFeatures(Set<List<Concept>> clusters, int topic) {
@@ -83,8 +89,29 @@ public class FeatureExtractor implements Serializable {
 		TopicFreqStatistics stats = this.computeFreqStats(clusters);
 		Map<Integer, Map<String, Double>> graphFeatures = this.loadGraphFeatures(topic);
 
-		for (List<Concept> cluster : clusters)
-			this.computeFeatures(cluster, topic, stats, graphFeatures);
+		// fixed order of instances, by representative concept
+		List<List<Concept>> sortedClusters = new ArrayList<List<Concept>>(clusters);
+		sortedClusters.sort((a, b) -> Integer.compare(a.get(0).id, b.get(0).id));
+
+		// representations for topic similarity, computed once per topic
+		List<Concept> toPrepare = sortedClusters.stream().map(cluster -> cluster.get(0)).collect(Collectors.toList());
+		toPrepare.add(this.getTopicConcept(topic));
+		for (ConceptSimilarityMeasure sim : getSimMeasures().values())
+			sim.prepare(toPrepare);
+
+		if (parallel) {
+			// one container per cluster, merged in order
+			List<FeatureContainer<Concept>> results = sortedClusters.parallelStream().map(cluster -> {
+				FeatureContainer<Concept> container = newContainer();
+				this.computeFeatures(container, cluster, topic, stats, graphFeatures);
+				return container;
+			}).collect(Collectors.toList());
+			for (FeatureContainer<Concept> container : results)
+				this.featContainer.addAll(container);
+		} else {
+			for (List<Concept> cluster : sortedClusters)
+				this.computeFeatures(this.featContainer, cluster, topic, stats, graphFeatures);
+		}
 
 		if (this.isTraining) {
 			this.featureNames = this.featContainer.getFeatures();
@@ -107,117 +134,134 @@ public class FeatureExtractor implements Serializable {
 
 	public void startTest() {
 		this.isTraining = false;
-		this.featContainer = new FeatureContainer<Concept>();
+		this.featContainer = newContainer();
 	}
 
-	private void computeFeatures(List<Concept> cluster, int topic, TopicFreqStatistics stats,
-			Map<Integer, Map<String, Double>> graphFeatures) {
+	private void computeFeatures(FeatureContainer<Concept> container, List<Concept> cluster, int topic,
+			TopicFreqStatistics stats, Map<Integer, Map<String, Double>> graphFeatures) {
 
 		// representative concept
 		Concept c = cluster.get(0);
 
 		// meta
-		featContainer.add(c, new Feature<Integer>("_id", c.id));
-		featContainer.add(c, new Feature<Integer>("_topic", topic));
+		set(container, c, Fixed.ID, c.id);
+		set(container, c, Fixed.TOPIC, topic);
 
 		// position
-		featContainer.add(c, new Feature<Double>("position_rep", this.getPosition(c)));
+		set(container, c, Fixed.POSITION_REP, this.getPosition(c));
 		List<Double> positions = this.getPositions(cluster);
-		featContainer.add(c, new Feature<Double>("position_first", positions.get(0)));
-		featContainer.add(c, new Feature<Double>("position_last", positions.get(positions.size() - 1)));
-		featContainer.add(c, new Feature<Double>("position_avg",
-				positions.stream().mapToDouble(val -> val).average().getAsDouble()));
-		featContainer.add(c,
-				new Feature<Double>("position_spread", positions.get(0) - positions.get(positions.size() - 1)));
+		set(container, c, Fixed.POSITION_FIRST, positions.get(0));
+		set(container, c, Fixed.POSITION_LAST, positions.get(positions.size() - 1));
+		set(container, c, Fixed.POSITION_AVG, positions.stream().mapToDouble(val -> val).average().getAsDouble());
+		set(container, c, Fixed.POSITION_SPREAD, positions.get(0) - positions.get(positions.size() - 1));
 
 		// label - length
-		featContainer.add(c, new Feature<Integer>("len_tok_rep", c.tokenList.size()));
+		set(container, c, Fixed.LEN_TOK_REP, c.tokenList.size());
 		List<Integer> lens = this.getLength(cluster, false);
-		featContainer.add(c, new Feature<Integer>("len_tok_max", lens.get(0)));
-		featContainer.add(c, new Feature<Integer>("len_tok_min", lens.get(lens.size() - 1)));
-		featContainer.add(c, new Feature<Double>("len_tok_avg",
-				lens.stream().mapToDouble(Integer::doubleValue).average().getAsDouble()));
-		featContainer.add(c, new Feature<Integer>("len_tok_spread", lens.get(0) - lens.get(lens.size() - 1)));
+		set(container, c, Fixed.LEN_TOK_MAX, lens.get(0));
+		set(container, c, Fixed.LEN_TOK_MIN, lens.get(lens.size() - 1));
+		set(container, c, Fixed.LEN_TOK_AVG, lens.stream().mapToDouble(Integer::doubleValue).average().getAsDouble());
+		set(container, c, Fixed.LEN_TOK_SPREAD, lens.get(0) - lens.get(lens.size() - 1));
 
-		featContainer.add(c, new Feature<Integer>("len_char_rep", c.name.length()));
+		set(container, c, Fixed.LEN_CHAR_REP, c.name.length());
 		lens = this.getLength(cluster, true);
-		featContainer.add(c, new Feature<Integer>("len_char_max", lens.get(0)));
-		featContainer.add(c, new Feature<Integer>("len_char_min", lens.get(lens.size() - 1)));
-		featContainer.add(c, new Feature<Double>("len_char_avg",
-				lens.stream().mapToDouble(Integer::doubleValue).average().getAsDouble()));
-		featContainer.add(c, new Feature<Integer>("len_char_spread", lens.get(0) - lens.get(lens.size() - 1)));
+		set(container, c, Fixed.LEN_CHAR_MAX, lens.get(0));
+		set(container, c, Fixed.LEN_CHAR_MIN, lens.get(lens.size() - 1));
+		set(container, c, Fixed.LEN_CHAR_AVG, lens.stream().mapToDouble(Integer::doubleValue).average().getAsDouble());
+		set(container, c, Fixed.LEN_CHAR_SPREAD, lens.get(0) - lens.get(lens.size() - 1));
 
 		// label - stopwords
 		int nbSW = (int) c.tokenList.stream().filter(t -> this.stopwords.isSW(t.text.toLowerCase())).count();
-		featContainer.add(c, new Feature<Integer>("sw_abs", nbSW));
-		featContainer.add(c, new Feature<Double>("sw_rel", nbSW / (double) c.tokenList.size()));
+		set(container, c, Fixed.SW_ABS, nbSW);
+		set(container, c, Fixed.SW_REL, nbSW / (double) c.tokenList.size());
 
 		// label - capitalization
 		String label = c.tokenList.stream().map(t -> t.text).collect(Collectors.joining(" "));
-		featContainer.add(c, new Feature<Boolean>("cap_all", allUpperCase.matcher(label).matches()));
-		featContainer.add(c, new Feature<Boolean>("cap_some", someUpperCase.matcher(label).matches()));
+		set(container, c, Fixed.CAP_ALL, allUpperCase.matcher(label).matches() ? 1 : 0);
+		set(container, c, Fixed.CAP_SOME, someUpperCase.matcher(label).matches() ? 1 : 0);
 
-		// label - pos
+		// label - pos, indicator per tag
 		for (PToken t : c.tokenList)
-			featContainer.add(c, new Feature<String>("pos", t.pos));
+			setIndicator(container, c, "pos", t.pos, Aggregation.MAX);
 
-		// label - named entity
+		// label - named entity, indicator per tag
 		for (PToken t : c.tokenList)
-			featContainer.add(c, new Feature<String>("ne", t.neTag != null ? t.neTag : "O"));
+			setIndicator(container, c, "ne", t.neTag != null ? t.neTag : "O", Aggregation.MAX);
 
 		// label - head token
 		if (c.headToken != null) {
-			featContainer.add(c, new Feature<String>("head_pos", c.headToken.pos));
-			featContainer.add(c, new Feature<String>("head_ne", c.headToken.neTag != null ? c.headToken.neTag : "O"));
-			featContainer.add(c, new Feature<Integer>("head_dep_depth", c.headDepDepth));
+			setIndicator(container, c, "head_pos", c.headToken.pos, Aggregation.LAST);
+			setIndicator(container, c, "head_ne", c.headToken.neTag != null ? c.headToken.neTag : "O",
+					Aggregation.LAST);
+			set(container, c, Fixed.HEAD_DEP_DEPTH, c.headDepDepth);
 		}
 
 		// topic similarity
-		for (Pair<String, Double> topicSim : this.computeTopicSimilarity(c, topic)) {
-			featContainer.add(c, new Feature<Double>(topicSim.first(), topicSim.second()));
-		}
+		for (Pair<String, Double> topicSim : this.computeTopicSimilarity(c, topic))
+			set(container, c, topicSim.first(), topicSim.second());
 
 		// psychologic categories
 		for (Entry<String, Double> e : this.mrc.getFeatures(c).entrySet())
-			featContainer.add(c, new Feature<Double>(e.getKey(), e.getValue()));
+			set(container, c, e.getKey(), e.getValue());
 		for (Entry<String, Double> e : this.conc.getFeatures(c).entrySet())
-			featContainer.add(c, new Feature<Double>(e.getKey(), e.getValue()));
+			set(container, c, e.getKey(), e.getValue());
 		for (Entry<String, Double> e : this.liwc.getFeatures(c).entrySet())
-			featContainer.add(c, new Feature<Double>(e.getKey(), e.getValue()));
+			set(container, c, e.getKey(), e.getValue());
 
 		// open ie specific features
-		featContainer.add(c, new Feature<Double>("ex_conf", c.confidence));
+		set(container, c, Fixed.EX_CONF, c.confidence);
 		if (!c.type.equals("SpatialArgument") && !c.type.equals("TemporalArgument"))
 			c.type = "SimpleArgument";
-		featContainer.add(c, new Feature<String>("ex_argtype", c.type));
+		setIndicator(container, c, "ex_argtype", c.type, Aggregation.LAST);
 
 		// frequency
-		featContainer.add(c, new Feature<Integer>("freq_abs", cluster.size()));
+		set(container, c, Fixed.FREQ_ABS, cluster.size());
 		double freq_rel = cluster.size() / (double) stats.nbChars;
-		featContainer.add(c, new Feature<Double>("freq_rel", freq_rel));
+		set(container, c, Fixed.FREQ_REL, freq_rel);
 
 		Set<String> docs = cluster.stream().map(ci -> ci.tokenList.get(0).documentId).collect(Collectors.toSet());
-		featContainer.add(c, new Feature<Double>("freq_docs", docs.size() / (double) stats.nbDoc));
+		set(container, c, Fixed.FREQ_DOCS, docs.size() / (double) stats.nbDoc);
 
 		// idf
 		List<Double> web1tIDF = this.getBackgroundFreq(c, x -> this.web1tFreq.getLogIDF(x));
-		featContainer.add(c,
-				new Feature<Double>("freq_idf_max", !web1tIDF.isEmpty() ? Collections.max(web1tIDF) : Double.NaN));
-		featContainer.add(c,
-				new Feature<Double>("freq_idf_min", !web1tIDF.isEmpty() ? Collections.min(web1tIDF) : Double.NaN));
+		set(container, c, Fixed.FREQ_IDF_MAX, !web1tIDF.isEmpty() ? Collections.max(web1tIDF) : Double.NaN);
+		set(container, c, Fixed.FREQ_IDF_MIN, !web1tIDF.isEmpty() ? Collections.min(web1tIDF) : Double.NaN);
 		double avg = web1tIDF.stream().mapToDouble(x -> x).sum() / web1tIDF.size();
-		featContainer.add(c, new Feature<Double>("freq_idf_avg", avg));
+		set(container, c, Fixed.FREQ_IDF_AVG, avg);
 
-		featContainer.add(c, new Feature<Double>("freq_rel_idf_max",
-				!web1tIDF.isEmpty() ? Collections.max(web1tIDF) * freq_rel : Double.NaN));
-		featContainer.add(c, new Feature<Double>("freq_rel_idf_min",
-				!web1tIDF.isEmpty() ? Collections.min(web1tIDF) * freq_rel : Double.NaN));
-		featContainer.add(c, new Feature<Double>("freq_rel_idf_avg", avg * freq_rel));
+		set(container, c, Fixed.FREQ_REL_IDF_MAX,
+				!web1tIDF.isEmpty() ? Collections.max(web1tIDF) * freq_rel : Double.NaN);
+		set(container, c, Fixed.FREQ_REL_IDF_MIN,
+				!web1tIDF.isEmpty() ? Collections.min(web1tIDF) * freq_rel : Double.NaN);
+		set(container, c, Fixed.FREQ_REL_IDF_AVG, avg * freq_rel);
 
 		// graph-based features
 		for (Entry<String, Double> gf : graphFeatures.get(c.id).entrySet())
-			featContainer.add(c, new Feature<Double>("graph_" + gf.getKey(), gf.getValue()));
+			set(container, c, "graph_" + gf.getKey(), gf.getValue());
+
+	}
+
+	// fixed features first, so that their column is the ordinal in every container
+	private static FeatureContainer<Concept> newContainer() {
+		FeatureContainer<Concept> container = new FeatureContainer<Concept>();
+		for (Fixed f : Fixed.values())
+			container.getColumn(f.featureName, f.type);
+		return container;
+	}
+
+	private static void set(FeatureContainer<Concept> container, Concept c, Fixed f, double value) {
+		container.set(c, f.ordinal(), value, Aggregation.LAST);
+	}
 
+	// numeric feature with a name known only at runtime
+	private static void set(FeatureContainer<Concept> container, Concept c, String name, double value) {
+		container.set(c, container.getColumn(name.toLowerCase(), DOUBLE), value, Aggregation.LAST);
+	}
+
+	// indicator of a string value, as Feature names it
+	private static void setIndicator(FeatureContainer<Concept> container, Concept c, String name, String value,
+			Aggregation agg) {
+		container.set(c, container.getColumn((name + "_" + value).toLowerCase(), STRING), 1, agg);
 	}
 
 	// collect idf values for every token
@@ -234,18 +278,20 @@ public class FeatureExtractor implements Serializable {
 	// compute similarity with topic description
 	private static Map<String, ConceptSimilarityMeasure> simMeasures;
 
-	private List<Pair<String, Double>> computeTopicSimilarity(Concept c, int topic) {
-
+	private static synchronized Map<String, ConceptSimilarityMeasure> getSimMeasures() {
 		if (simMeasures == null) {
 			simMeasures = new HashMap<String, ConceptSimilarityMeasure>();
 			simMeasures.put("topic_jaccard", new JaccardDistance());
 			simMeasures.put("topic_wn", new WordBasedMeasure(WNSimMeasure.RES));
 			simMeasures.put("topic_w2v", new WordEmbeddingDistance(EmbeddingType.WORD2VEC, 300, false));
 		}
+		return simMeasures;
+	}
+
+	private List<Pair<String, Double>> computeTopicSimilarity(Concept c, int topic) {
 
-		String[] topicDesc = this.topicDescriptions.get(topic);
-		Concept dummy = new Concept(StringUtils.join(topicDesc));
-		dummy = NonUIMAPreprocessor.getInstance().preprocess(dummy);
+		Map<String, ConceptSimilarityMeasure> simMeasures = getSimMeasures();
+		Concept dummy = this.getTopicConcept(topic);
 
 		List<Pair<String, Double>> scores = new ArrayList<Pair<String, Double>>();
 		for (String sim : simMeasures.keySet()) {
@@ -255,10 +301,60 @@ public class FeatureExtractor implements Serializable {
 		return scores;
 	}
 
+	// topic description as preprocessed concept, created once per topic
+	private Concept getTopicConcept(int topic) {
+		return this.topicConcepts.computeIfAbsent(topic, t -> {
+			Concept dummy = new Concept(StringUtils.join(this.topicDescriptions.get(t)));
+			return NonUIMAPreprocessor.getInstance().preprocess(dummy);
+		});
+	}
+
 	// regex patterns
 	private static final Pattern allUpperCase = Pattern.compile("[^a-z]*[A-Z]+[^a-z]*");
 	private static final Pattern someUpperCase = Pattern.compile(".*[A-Z]+.*");
 
+	// feature types
+	private static final Class<Object> INTEGER = type(Integer.class);
+	private static final Class<Object> DOUBLE = type(Double.class);
+	private static final Class<Object> BOOLEAN = type(Boolean.class);
+	private static final Class<Object> STRING = type(String.class);
+
+	@SuppressWarnings("unchecked")
+	private static Class<Object> type(Class<?> c) {
+		return (Class<Object>) c;
+	}
+
+	// features with a fixed name, resolved to columns once per container
+	private enum Fixed {
+		ID("_id", INTEGER), TOPIC("_topic", INTEGER),
+		POSITION_REP("position_rep", DOUBLE), POSITION_FIRST("position_first", DOUBLE),
+		POSITION_LAST("position_last", DOUBLE), POSITION_AVG("position_avg", DOUBLE),
+		POSITION_SPREAD("position_spread", DOUBLE),
+		LEN_TOK_REP("len_tok_rep", INTEGER), LEN_TOK_MAX("len_tok_max", INTEGER),
+		LEN_TOK_MIN("len_tok_min", INTEGER), LEN_TOK_AVG("len_tok_avg", DOUBLE),
+		LEN_TOK_SPREAD("len_tok_spread", INTEGER),
+		LEN_CHAR_REP("len_char_rep", INTEGER), LEN_CHAR_MAX("len_char_max", INTEGER),
+		LEN_CHAR_MIN("len_char_min", INTEGER), LEN_CHAR_AVG("len_char_avg", DOUBLE),
+		LEN_CHAR_SPREAD("len_char_spread", INTEGER),
+		SW_ABS("sw_abs", INTEGER), SW_REL("sw_rel", DOUBLE),
+		CAP_ALL("cap_all", BOOLEAN), CAP_SOME("cap_some", BOOLEAN),
+		HEAD_DEP_DEPTH("head_dep_depth", INTEGER),
+		EX_CONF("ex_conf", DOUBLE),
+		FREQ_ABS("freq_abs", INTEGER), FREQ_REL("freq_rel", DOUBLE), FREQ_DOCS("freq_docs", DOUBLE),
+		FREQ_IDF_MAX("freq_idf_max", DOUBLE), FREQ_IDF_MIN("freq_idf_min", DOUBLE),
+		FREQ_IDF_AVG("freq_idf_avg", DOUBLE),
+		FREQ_REL_IDF_MAX("freq_rel_idf_max", DOUBLE), FREQ_REL_IDF_MIN("freq_rel_idf_min", DOUBLE),
+		FREQ_REL_IDF_AVG("freq_rel_idf_avg", DOUBLE);
+
+		private final String featureName;
+		private final Class<Object> type;
+
+		private Fixed(String featureName, Class<Object> type) {
+			this.featureName = featureName;
+			this.type = type;
+		}
+	}
+
 	// returns length of labels, in decreasing order
 	private List<Integer> getLength(List<Concept> concepts, boolean chars) {
 		List<Integer> lens = new ArrayList<Integer>();
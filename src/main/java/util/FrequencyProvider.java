@@ -2,8 +2,8 @@ package util;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.googlecode.jweb1t.JWeb1TSearcher;
 
@@ -20,7 +20,7 @@ public class FrequencyProvider {
 	public FrequencyProvider(Source source) {
 
 		this.source = source;
-		this.freqs = new HashMap<String, Long>(100000);
+		this.freqs = new ConcurrentHashMap<String, Long>(100000);
 
 		if (this.source == Source.WEB1T) {
 			System.out.println("loading Google Web1T ngrams");
@@ -41,13 +41,16 @@ public class FrequencyProvider {
 
 		Long df = freqs.get(phrase);
 
+		// searcher reads index files -> one lookup at a time, failed ones cached as 0
 		if (df == null && this.source == Source.WEB1T) {
-			try {
-				df = freqSearcher.getFrequency(phrase);
-			} catch (IOException e) {
-				System.err.println("web1t error: " + phrase);
+			synchronized (freqSearcher) {
+				try {
+					df = freqSearcher.getFrequency(phrase);
+				} catch (IOException e) {
+					System.err.println("web1t error: " + phrase);
+				}
 			}
-			freqs.put(phrase, df);
+			freqs.put(phrase, df != null ? df : 0L);
 		}
 
 		if (df != null)
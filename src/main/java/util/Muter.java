@@ -15,26 +15,35 @@ public class Muter {
 		}
 	});
 
-	public static void mute() {
-		System.setOut(dummyStream);
+	// System.out is global -> count nested / concurrent callers, restore with last one
+	private static int muted = 0;
+
+	public static synchronized void mute() {
+		if (muted++ == 0)
+			System.setOut(dummyStream);
 	}
 
-	public static void unmute() {
-		System.setOut(out);
+	public static synchronized void unmute() {
+		if (muted > 0 && --muted == 0)
+			System.setOut(out);
 	}
 
 	public static <T, R> R callMuted(Function<T, R> func, T arg) {
 		mute();
-		R res = func.apply(arg);
-		unmute();
-		return res;
+		try {
+			return func.apply(arg);
+		} finally {
+			unmute();
+		}
 	}
 
 	public static <T, U, R> R callMuted(BiFunction<T, U, R> func, T arg1, U arg2) {
 		mute();
-		R res = func.apply(arg1, arg2);
-		unmute();
-		return res;
+		try {
+			return func.apply(arg1, arg2);
+		} finally {
+			unmute();
+		}
 	}
 
 }
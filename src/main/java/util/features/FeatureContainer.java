@@ -1,8 +1,10 @@
 package util.features;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
@@ -14,7 +16,15 @@ import weka.core.Instances;
 
 /**
  * Feature container - collects features extracted for different instances and
- * then turns them into Weka format
+ * then turns them into Weka format, instances are kept in the order they were
+ * added
+ * 
+ * Feature names are mapped to columns when first seen, values are stored per
+ * instance in a double array indexed by column (NaN if not set). Columns can
+ * also be resolved upfront with {@link #getColumn(String, Class)}, they become
+ * part of the features once a value is set. If a feature is added several times
+ * for an instance, the values are combined by the given {@link Aggregation}, by
+ * default the last value is kept.
  * 
  * @author falke
  *
@@ -23,35 +33,91 @@ import weka.core.Instances;
  */
 public class FeatureContainer<I> {
 
-	private Map<String, Class<Object>> features;
+	private Map<String, Integer> columns;
+	private List<String> names;
+	private List<Class<Object>> types;
+	private BitSet used;
 	private TreeSet<String> featuresSorted;
-	private Map<I, Map<String, Feature<Object>>> featureValues;
+	private Map<I, double[]> featureValues;
+
+	// row of the last key, features are usually added instance by instance
+	private I lastKey;
+	private double[] lastRow;
 
 	public FeatureContainer() {
-		this.features = new HashMap<String, Class<Object>>();
+		this.columns = new HashMap<String, Integer>();
+		this.names = new ArrayList<String>();
+		this.types = new ArrayList<Class<Object>>();
+		this.used = new BitSet();
 		this.featuresSorted = new TreeSet<String>();
-		this.featureValues = new HashMap<I, Map<String, Feature<Object>>>();
+		this.featureValues = new LinkedHashMap<I, double[]>();
 	}
 
-	@SuppressWarnings("unchecked")
 	public void add(I key, Feature<? extends Object> f) {
+		this.add(key, f, Aggregation.LAST);
+	}
+
+	@SuppressWarnings("unchecked")
+	public void add(I key, Feature<? extends Object> f, Aggregation agg) {
+		int col = this.getColumn(f.getName(), (Class<Object>) f.getValue().getClass());
+		this.set(key, col, f.getDoubleValue(), agg);
+	}
 
-		if (!this.features.containsKey(f.getName())) {
-			this.features.put(f.getName(), (Class<Object>) f.getValue().getClass());
-			this.featuresSorted.add(f.getName());
-		} else {
-			Class<Object> type = this.features.get(f.getName());
-			if (type != f.getValue().getClass())
-				throw new IllegalArgumentException("feature already defined with different type");
+	// adds all instances and features of the other container
+	public void addAll(FeatureContainer<I> other) {
+		int[] mapping = new int[other.types.size()];
+		for (int col = 0; col < mapping.length; col++) {
+			mapping[col] = this.getColumn(other.names.get(col), other.types.get(col));
+			if (other.used.get(col))
+				this.markUsed(mapping[col]);
 		}
+		for (Map.Entry<I, double[]> e : other.featureValues.entrySet()) {
+			double[] values = e.getValue();
+			for (int col = 0; col < values.length; col++)
+				if (!Double.isNaN(values[col]))
+					this.set(e.getKey(), mapping[col], values[col], Aggregation.LAST);
+		}
+	}
+
+	/**
+	 * column of the feature, added to the schema if new
+	 */
+	public int getColumn(String name, Class<Object> type) {
+		Integer col = this.columns.get(name);
+		if (col == null) {
+			col = this.types.size();
+			this.columns.put(name, col);
+			this.names.add(name);
+			this.types.add(type);
+		} else if (this.types.get(col) != type) {
+			throw new IllegalArgumentException("feature already defined with different type");
+		}
+		return col;
+	}
+
+	public void set(I key, int col, double value, Aggregation agg) {
+		double[] row = this.getRow(key, col);
+		row[col] = agg.combine(row[col], value);
+		if (!this.used.get(col))
+			this.markUsed(col);
+	}
 
-		if (!this.featureValues.containsKey(key))
-			this.featureValues.put(key, new HashMap<String, Feature<Object>>());
-		this.featureValues.get(key).put(f.getName(), (Feature<Object>) f);
+	private void markUsed(int col) {
+		this.used.set(col);
+		this.featuresSorted.add(this.names.get(col));
 	}
 
-	public Collection<Feature<Object>> get(I key) {
-		return this.featureValues.get(key).values();
+	private double[] getRow(I key, int col) {
+		double[] row = key == this.lastKey ? this.lastRow : this.featureValues.get(key);
+		if (row == null || row.length <= col) {
+			int oldLength = row == null ? 0 : row.length;
+			row = row == null ? new double[Math.max(col + 1, 16)] : Arrays.copyOf(row, Math.max(col + 1, 2 * oldLength));
+			Arrays.fill(row, oldLength, row.length, Double.NaN);
+			this.featureValues.put(key, row);
+		}
+		this.lastKey = key;
+		this.lastRow = row;
+		return row;
 	}
 
 	public List<String> getFeatures() {
@@ -64,39 +130,75 @@ public class FeatureContainer<I> {
 			orderedFeatureNames = new ArrayList<String>(this.getFeatures());
 
 		Instances data = this.createEmptyDataset(orderedFeatureNames);
+		int[] cols = this.getColumns(orderedFeatureNames);
 		for (I key : this.featureValues.keySet())
-			data.add(this.createInstance(orderedFeatureNames, key));
+			data.add(this.createInstance(cols, key));
 
 		return data;
 	}
 
 	public Instance createInstance(List<String> featureNames, I key) {
-		double[] vals = new double[featureNames.size()];
-		for (int i = 0; i < featureNames.size(); i++) {
-			Feature<Object> f = this.featureValues.get(key).get(featureNames.get(i));
-			if (f != null)
-				vals[i] = f.getDoubleValue();
-			else {
-				Class<Object> type = features.get(featureNames.get(i));
-				if (type.equals(Double.class) || type.equals(Float.class) || type.equals(Integer.class))
-					vals[i] = Double.NaN;
+		return this.createInstance(this.getColumns(featureNames), key);
+	}
+
+	private int[] getColumns(List<String> featureNames) {
+		int[] cols = new int[featureNames.size()];
+		for (int i = 0; i < cols.length; i++) {
+			Integer col = this.columns.get(featureNames.get(i));
+			cols[i] = col != null ? col : -1;
+		}
+		return cols;
+	}
+
+	// missing values are NaN for numeric and 0 for boolean and string features
+	private Instance createInstance(int[] cols, I key) {
+		double[] row = this.featureValues.get(key);
+		double[] vals = new double[cols.length];
+		for (int i = 0; i < cols.length; i++) {
+			int col = cols[i];
+			double v = col >= 0 && col < row.length ? row[col] : Double.NaN;
+			if (Double.isNaN(v) && col >= 0) {
+				Class<Object> type = this.types.get(col);
 				if (type.equals(Boolean.class) || type.equals(String.class))
-					vals[i] = 0;
+					v = 0;
 			}
+			vals[i] = v;
 		}
 		return new DenseInstance(1.0, vals);
 	}
 
+	@SuppressWarnings("unchecked")
 	private Instances createEmptyDataset(List<String> featureNames) {
 		ArrayList<Attribute> atts = new ArrayList<Attribute>();
 		for (String name : featureNames) {
-			if (!this.features.containsKey(name)) {
-				Feature<Double> f = new Feature<Double>(name, Double.NaN);
-				this.add(this.featureValues.keySet().iterator().next(), f);
-			}
-			atts.add(Feature.createWekaAttribute(name, this.features.get(name)));
+			// features not seen here, e.g. in test data, are numeric
+			if (!this.columns.containsKey(name))
+				this.getColumn(name, (Class<Object>) (Class<?>) Double.class);
+			atts.add(Feature.createWekaAttribute(name, this.types.get(this.columns.get(name))));
 		}
 		Instances data = new Instances("data", atts, 0);
 		return data;
 	}
+
+	/**
+	 * how values of a feature added several times for an instance are combined
+	 */
+	public enum Aggregation {
+		LAST, MAX, MIN, SUM;
+
+		private double combine(double old, double value) {
+			if (Double.isNaN(old))
+				return value;
+			switch (this) {
+			case MAX:
+				return Math.max(old, value);
+			case MIN:
+				return Math.min(old, value);
+			case SUM:
+				return old + value;
+			default:
+				return value;
+			}
+		}
+	}
 }
@@ -0,0 +1,274 @@
+package util.ilp;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pure Java branch and bound with LP relaxations solved by {@link SimplexLp}
+ *
+ * Depth-first search, branching on the most fractional binary variable (then
+ * other integer variables) and exploring the upper branch first. Once all
+ * binaries are integral, they are fixed and the relaxation is solved again,
+ * which gives integral values for the remaining variables if they form a
+ * network flow, as in the connectivity models. Nodes whose relaxation cannot
+ * beat the incumbent are pruned. Integer solutions are passed to the lazy
+ * constraint callback, if cuts are returned they are added to the model and the
+ * node is solved again. A feasible start solution is used as first incumbent.
+ * When the time limit is hit, the best solution found so far is returned.
+ * Child nodes start from the optimal tableau of their parent and only resolve
+ * the changed bounds, nodes after new lazy constraints start from scratch.
+ * The tableau is dense, so problems above {@link #maxTableauCells} are not
+ * solved and only the start solution is returned, and parent tableaus are only
+ * kept for waiting nodes as long as they fit into the same limit.
+ */
+public class BranchAndBoundSolver extends IlpSolver {
+
+	private static final double INT_EPS = 1e-6;
+	private static final int MAX_CUT_ROUNDS = 20;
+
+	// 64M cells = 512MB per tableau
+	public static long maxTableauCells = 1L << 26;
+
+	private int nodes;
+	private int cuts;
+	private double[] rhsArray;
+	private long storedCells;
+
+	@Override
+	public Status solve() {
+
+		long deadline = this.timeLimit > 0 ? System.currentTimeMillis() + (long) (this.timeLimit * 1000) : -1;
+		int n = this.getNumVars();
+
+		// internally minimize
+		double sign = this.maximize ? -1 : 1;
+		double[] cost = new double[n];
+		for (int k = 0; k < this.objective.size(); k++)
+			cost[this.objective.getVar(k)] += sign * this.objective.getCoef(k);
+		this.rhsArray = this.rhs.toArray();
+
+		double[] best = null;
+		double bestCost = Double.POSITIVE_INFINITY;
+		if (this.start != null && this.isFeasible(this.start, INT_EPS) && this.acceptIntegral(this.start)) {
+			best = this.start.clone();
+			bestCost = this.evaluate(cost, best);
+		}
+
+		Deque<Node> stack = new ArrayDeque<Node>();
+		stack.push(new Node(this.lb.toArray(), this.ub.toArray(), null));
+		boolean complete = true;
+		this.nodes = 0;
+		this.cuts = 0;
+		this.storedCells = 0;
+
+		while (!stack.isEmpty()) {
+			if (deadline > 0 && System.currentTimeMillis() > deadline) {
+				complete = false;
+				break;
+			}
+			Node node = this.pop(stack);
+			this.nodes++;
+
+			SimplexLp lp = this.solveNode(node, cost, bestCost, deadline);
+			if (lp == null) {
+				complete = false;
+				break;
+			}
+			SimplexLp.Result res = lp.getResult();
+			if (res == SimplexLp.Result.ABORTED) {
+				complete = false;
+				break;
+			}
+			if (res == SimplexLp.Result.INFEASIBLE)
+				continue;
+			if (res == SimplexLp.Result.UNBOUNDED) {
+				Logger.getGlobal().log(Level.WARNING, "unbounded relaxation, stopping branch and bound");
+				complete = false;
+				break;
+			}
+			if (lp.getObjective() >= bestCost - INT_EPS)
+				continue;
+
+			// most fractional binary, then other integer variable
+			double[] x = lp.getSolution();
+			int branch = this.selectBranchVar(x, node, true);
+			if (branch < 0) {
+				branch = this.selectBranchVar(x, node, false);
+				if (branch >= 0) {
+					// fix binaries and solve again
+					Node fixed = new Node(node.lb.clone(), node.ub.clone(), this.copy(lp));
+					for (int j = this.integer.nextSetBit(0); j >= 0; j = this.integer.nextSetBit(j + 1)) {
+						if (node.ub[j] - node.lb[j] <= 1)
+							fixed.lb[j] = fixed.ub[j] = Math.rint(x[j]);
+					}
+					SimplexLp fixedLp = this.solveRelaxation(fixed, cost, deadline);
+					if (fixedLp != null && fixedLp.getResult() == SimplexLp.Result.OPTIMAL
+							&& this.selectBranchVar(fixedLp.getSolution(), fixed, false) < 0
+							&& this.acceptIntegral(this.round(fixedLp.getSolution()))) {
+						if (fixedLp.getObjective() < bestCost - INT_EPS) {
+							best = this.round(fixedLp.getSolution());
+							bestCost = fixedLp.getObjective();
+						}
+						// bound of the node reached -> nothing better below
+						if (fixedLp.getObjective() <= lp.getObjective() + INT_EPS)
+							continue;
+					}
+				}
+			}
+
+			if (branch < 0) {
+				if (!this.acceptIntegral(this.round(x))) {
+					// cut off by new constraints, solve node again
+					this.push(stack, node);
+					continue;
+				}
+				best = x;
+				bestCost = lp.getObjective();
+				continue;
+			}
+
+			// up branch is solved next and can take over the tableau
+			Node down = new Node(node.lb.clone(), node.ub.clone(), this.copy(lp));
+			down.ub[branch] = Math.floor(x[branch]);
+			Node up = new Node(node.lb, node.ub, lp);
+			up.lb[branch] = Math.ceil(x[branch]);
+			this.push(stack, down);
+			this.push(stack, up);
+		}
+
+		Logger.getGlobal().log(Level.INFO, "branch and bound nodes: " + this.nodes + ", lazy constraints: " + this.cuts);
+
+		if (best == null)
+			return complete ? Status.INFEASIBLE : Status.UNKNOWN;
+		this.solution = best;
+		this.objValue = sign * bestCost;
+		return complete ? Status.OPTIMAL : Status.FEASIBLE;
+	}
+
+	// relaxation of the node, tightened by lazy constraints violated by it,
+	// null if too large
+	private SimplexLp solveNode(Node node, double[] cost, double bestCost, long deadline) {
+		SimplexLp lp = null;
+		for (int round = 0; round <= MAX_CUT_ROUNDS; round++) {
+			lp = this.solveRelaxation(node, cost, deadline);
+			if (lp == null || lp.getResult() != SimplexLp.Result.OPTIMAL || lp.getObjective() >= bestCost - INT_EPS
+					|| this.lazyConstraints == null || !this.addViolated(lp.getSolution()))
+				break;
+		}
+		return lp;
+	}
+
+	// warm start from the parent tableau if it still has all rows, null if a new
+	// tableau would be too large
+	private SimplexLp solveRelaxation(Node node, double[] cost, long deadline) {
+		SimplexLp lp = node.parentLp;
+		node.parentLp = null;
+		if (lp != null && lp.getNumRows() == this.rows.size()
+				&& lp.resolve(node.lb, node.ub) != SimplexLp.Result.STALLED)
+			return lp;
+		lp = null;
+		long cells = SimplexLp.estimateCells(this.senses, cost.length);
+		if (cells > maxTableauCells) {
+			Logger.getGlobal().log(Level.WARNING, "LP too large for branch and bound (" + this.rows.size()
+					+ " rows, " + cost.length + " variables), using the start solution");
+			return null;
+		}
+		lp = new SimplexLp(this.rows, this.senses, this.rhsArray, cost, node.lb, node.ub, deadline);
+		lp.solve();
+		return lp;
+	}
+
+	// copy of the tableau for a node, null (= start from scratch) if the
+	// tableaus kept for waiting nodes would get too large
+	private SimplexLp copy(SimplexLp lp) {
+		if (this.storedCells + lp.getCells() > maxTableauCells)
+			return null;
+		return lp.copy();
+	}
+
+	private void push(Deque<Node> stack, Node node) {
+		if (node.parentLp != null)
+			this.storedCells += node.parentLp.getCells();
+		stack.push(node);
+	}
+
+	private Node pop(Deque<Node> stack) {
+		Node node = stack.pop();
+		if (node.parentLp != null)
+			this.storedCells -= node.parentLp.getCells();
+		return node;
+	}
+
+	private boolean acceptIntegral(double[] x) {
+		return this.lazyConstraints == null || !this.addViolated(x);
+	}
+
+	// asks the callback, adds returned constraints violated by x to the model
+	private boolean addViolated(double[] x) {
+		boolean violated = false;
+		for (Constraint c : this.lazyConstraints.separate(x)) {
+			if (c.isViolated(x, INT_EPS)) {
+				this.addConstraint(c.expr, c.sense, c.rhs);
+				this.cuts++;
+				violated = true;
+			}
+		}
+		if (violated)
+			this.rhsArray = this.rhs.toArray();
+		return violated;
+	}
+
+	// most fractional integer variable, only binaries (domain <= 1) or all
+	private int selectBranchVar(double[] x, Node node, boolean binaryOnly) {
+		int branch = -1;
+		double frac = INT_EPS;
+		for (int j = this.integer.nextSetBit(0); j >= 0; j = this.integer.nextSetBit(j + 1)) {
+			if (binaryOnly && node.ub[j] - node.lb[j] > 1)
+				continue;
+			double f = Math.abs(x[j] - Math.rint(x[j]));
+			if (f > frac) {
+				frac = f;
+				branch = j;
+			}
+		}
+		return branch;
+	}
+
+	private double[] round(double[] x) {
+		for (int j = this.integer.nextSetBit(0); j >= 0; j = this.integer.nextSetBit(j + 1))
+			x[j] = Math.rint(x[j]);
+		return x;
+	}
+
+	public int getNodes() {
+		return this.nodes;
+	}
+
+	public int getLazyConstraints() {
+		return this.cuts;
+	}
+
+	private double evaluate(double[] cost, double[] x) {
+		double sum = 0;
+		for (int j = 0; j < x.length; j++)
+			sum += cost[j] * x[j];
+		return sum;
+	}
+
+	// bounds of a subproblem and the tableau of its parent to start from
+	private static class Node {
+
+		private double[] lb;
+		private double[] ub;
+		private SimplexLp parentLp;
+
+		private Node(double[] lb, double[] ub, SimplexLp parentLp) {
+			this.lb = lb;
+			this.ub = ub;
+			this.parentLp = parentLp;
+		}
+	}
+
+}
@@ -0,0 +1,152 @@
+package util.ilp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ilog.concert.IloException;
+import ilog.concert.IloLinearNumExpr;
+import ilog.concert.IloNumVar;
+import ilog.concert.IloNumVarType;
+import ilog.concert.IloRange;
+import ilog.cplex.IloCplex;
+
+/**
+ * Solves the model with IBM CPLEX
+ */
+public class CplexSolver extends IlpSolver {
+
+	private IloCplex problem;
+
+	public CplexSolver() throws IloException {
+		// fails early if library or license is missing
+		this.problem = new IloCplex();
+	}
+
+	@Override
+	public Status solve() {
+		try {
+			IloNumVar[] vars = new IloNumVar[this.getNumVars()];
+			for (int j = 0; j < vars.length; j++) {
+				IloNumVarType type = this.integer.get(j)
+						? (this.lb.get(j) == 0 && this.ub.get(j) == 1 ? IloNumVarType.Bool : IloNumVarType.Int)
+						: IloNumVarType.Float;
+				vars[j] = this.problem.numVar(this.lb.get(j), this.ub.get(j), type);
+			}
+
+			IloLinearNumExpr obj = this.toExpr(this.objective, vars);
+			if (this.maximize)
+				this.problem.addMaximize(obj);
+			else
+				this.problem.addMinimize(obj);
+
+			for (int i = 0; i < this.rows.size(); i++) {
+				IloLinearNumExpr expr = this.toExpr(this.rows.get(i), vars);
+				switch (this.senses.get(i)) {
+				case LE:
+					this.problem.addLe(expr, this.rhs.get(i));
+					break;
+				case GE:
+					this.problem.addGe(expr, this.rhs.get(i));
+					break;
+				case EQ:
+					this.problem.addEq(expr, this.rhs.get(i));
+					break;
+				}
+			}
+
+			this.problem.setOut(null);
+			if (this.timeLimit > 0)
+				this.problem.setParam(IloCplex.DoubleParam.TimeLimit, this.timeLimit);
+			if (this.start != null)
+				this.problem.addMIPStart(vars, this.start);
+			if (this.lazyConstraints != null) {
+				this.problem.use(new LazyCallback(vars));
+				this.problem.use(new UserCutCallback(vars));
+			}
+
+			boolean solved = this.problem.solve();
+			IloCplex.Status status = this.problem.getStatus();
+			if (solved) {
+				this.solution = this.problem.getValues(vars);
+				this.objValue = this.problem.getObjValue();
+			}
+			this.problem.end();
+
+			if (status.equals(IloCplex.Status.Optimal))
+				return Status.OPTIMAL;
+			if (status.equals(IloCplex.Status.Feasible))
+				return Status.FEASIBLE;
+			if (status.equals(IloCplex.Status.Infeasible))
+				return Status.INFEASIBLE;
+			return Status.UNKNOWN;
+
+		} catch (IloException e) {
+			System.err.println("Error solving ILP");
+			e.printStackTrace();
+			return Status.UNKNOWN;
+		}
+	}
+
+	// passes integer solutions found by cplex to the lazy constraint callback
+	private class LazyCallback extends IloCplex.LazyConstraintCallback {
+
+		private IloNumVar[] vars;
+
+		public LazyCallback(IloNumVar[] vars) {
+			this.vars = vars;
+		}
+
+		@Override
+		protected void main() throws IloException {
+			for (IloRange cut : separate(this.getValues(this.vars), this.vars))
+				this.add(cut);
+		}
+	}
+
+	// same for fractional solutions of node relaxations
+	private class UserCutCallback extends IloCplex.UserCutCallback {
+
+		private IloNumVar[] vars;
+
+		public UserCutCallback(IloNumVar[] vars) {
+			this.vars = vars;
+		}
+
+		@Override
+		protected void main() throws IloException {
+			if (this.isAfterCutLoop())
+				return;
+			for (IloRange cut : separate(this.getValues(this.vars), this.vars))
+				this.add(cut);
+		}
+	}
+
+	private IloRange[] separate(double[] values, IloNumVar[] vars) throws IloException {
+		List<IloRange> cuts = new ArrayList<IloRange>();
+		for (Constraint c : this.lazyConstraints.separate(values)) {
+			if (!c.isViolated(values, 1e-6))
+				continue;
+			IloLinearNumExpr expr = this.toExpr(c.expr, vars);
+			switch (c.sense) {
+			case LE:
+				cuts.add(this.problem.le(expr, c.rhs));
+				break;
+			case GE:
+				cuts.add(this.problem.ge(expr, c.rhs));
+				break;
+			case EQ:
+				cuts.add(this.problem.eq(expr, c.rhs));
+				break;
+			}
+		}
+		return cuts.toArray(new IloRange[cuts.size()]);
+	}
+
+	private IloLinearNumExpr toExpr(LinearExpr expr, IloNumVar[] vars) throws IloException {
+		IloLinearNumExpr lin = this.problem.linearNumExpr();
+		for (int k = 0; k < expr.size(); k++)
+			lin.addTerm(expr.getCoef(k), vars[expr.getVar(k)]);
+		return lin;
+	}
+
+}
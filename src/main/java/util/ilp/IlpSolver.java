@@ -0,0 +1,204 @@
+package util.ilp;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.carrotsearch.hppc.DoubleArrayList;
+
+/**
+ * Solver independent (mixed) integer linear program
+ *
+ * Variables are addressed by the index returned when adding them. The model is
+ * collected here and handed to the backend on solve, use {@link #create()} to
+ * get the configured backend. Constraints that are too many to add upfront can
+ * be separated lazily by a {@link LazyConstraintCallback}.
+ */
+public abstract class IlpSolver {
+
+	// cplex, java or auto (= cplex if it can be loaded)
+	public static String backend = "auto";
+
+	protected DoubleArrayList lb = new DoubleArrayList();
+	protected DoubleArrayList ub = new DoubleArrayList();
+	protected BitSet integer = new BitSet();
+
+	protected LinearExpr objective = new LinearExpr();
+	protected boolean maximize = true;
+
+	protected List<LinearExpr> rows = new ArrayList<LinearExpr>();
+	protected List<Sense> senses = new ArrayList<Sense>();
+	protected DoubleArrayList rhs = new DoubleArrayList();
+
+	protected double timeLimit = -1;
+	protected double[] start;
+	protected LazyConstraintCallback lazyConstraints;
+
+	protected double[] solution;
+	protected double objValue = Double.NaN;
+
+	public static IlpSolver create() {
+		if (!backend.equals("java")) {
+			try {
+				return new CplexSolver();
+			} catch (Exception | LinkageError e) {
+				if (backend.equals("cplex"))
+					throw new IllegalStateException("cplex not available", e);
+				Logger.getGlobal().log(Level.FINE, "cplex not available, using branch and bound");
+			}
+		}
+		return new BranchAndBoundSolver();
+	}
+
+	public int addVar(double lb, double ub, boolean integer) {
+		int id = this.lb.size();
+		this.lb.add(lb);
+		this.ub.add(ub);
+		if (integer)
+			this.integer.set(id);
+		return id;
+	}
+
+	public int[] addVars(int n, double lb, double ub, boolean integer) {
+		int[] ids = new int[n];
+		for (int i = 0; i < n; i++)
+			ids[i] = this.addVar(lb, ub, integer);
+		return ids;
+	}
+
+	public int[] addBoolVars(int n) {
+		return this.addVars(n, 0, 1, true);
+	}
+
+	public void setObjective(LinearExpr expr, boolean maximize) {
+		this.objective = expr;
+		this.maximize = maximize;
+	}
+
+	public void addConstraint(LinearExpr expr, Sense sense, double rhs) {
+		this.rows.add(expr);
+		this.senses.add(sense);
+		this.rhs.add(rhs);
+	}
+
+	public void addLe(LinearExpr expr, double rhs) {
+		this.addConstraint(expr, Sense.LE, rhs);
+	}
+
+	public void addGe(LinearExpr expr, double rhs) {
+		this.addConstraint(expr, Sense.GE, rhs);
+	}
+
+	public void addEq(LinearExpr expr, double rhs) {
+		this.addConstraint(expr, Sense.EQ, rhs);
+	}
+
+	// in seconds, <= 0 for no limit
+	public void setTimeLimit(double seconds) {
+		this.timeLimit = seconds;
+	}
+
+	// initial solution (all variables), used if feasible
+	public void setStart(double[] values) {
+		this.start = values;
+	}
+
+	// checked for every integer solution before accepting it
+	public void setLazyConstraintCallback(LazyConstraintCallback callback) {
+		this.lazyConstraints = callback;
+	}
+
+	public abstract Status solve();
+
+	public double getValue(int var) {
+		return this.solution[var];
+	}
+
+	public double[] getValues(int[] vars) {
+		double[] values = new double[vars.length];
+		for (int i = 0; i < vars.length; i++)
+			values[i] = this.solution[vars[i]];
+		return values;
+	}
+
+	public double getObjValue() {
+		return this.objValue;
+	}
+
+	public int getNumVars() {
+		return this.lb.size();
+	}
+
+	public int getNumConstraints() {
+		return this.rows.size();
+	}
+
+	// check bounds, integrality and constraints
+	public boolean isFeasible(double[] values, double tolerance) {
+		if (values == null || values.length != this.getNumVars())
+			return false;
+		for (int j = 0; j < values.length; j++) {
+			if (values[j] < this.lb.get(j) - tolerance || values[j] > this.ub.get(j) + tolerance)
+				return false;
+			if (this.integer.get(j) && Math.abs(values[j] - Math.rint(values[j])) > tolerance)
+				return false;
+		}
+		for (int i = 0; i < this.rows.size(); i++) {
+			Constraint c = new Constraint(this.rows.get(i), this.senses.get(i), this.rhs.get(i));
+			if (c.isViolated(values, tolerance))
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(this.maximize ? "maximize" : "minimize").append(this.objective).append("\n");
+		for (int i = 0; i < this.rows.size(); i++)
+			sb.append(this.rows.get(i)).append(" ").append(this.senses.get(i)).append(" ").append(this.rhs.get(i))
+					.append("\n");
+		return sb.toString();
+	}
+
+	/**
+	 * Separates constraints violated by a solution. Returned constraints have to
+	 * be valid for all feasible solutions, an empty list accepts an integer
+	 * solution. Backends may also pass fractional solutions of the relaxation to
+	 * tighten it.
+	 */
+	public interface LazyConstraintCallback {
+		List<Constraint> separate(double[] values);
+	}
+
+	public static class Constraint {
+
+		public final LinearExpr expr;
+		public final Sense sense;
+		public final double rhs;
+
+		public Constraint(LinearExpr expr, Sense sense, double rhs) {
+			this.expr = expr;
+			this.sense = sense;
+			this.rhs = rhs;
+		}
+
+		public boolean isViolated(double[] values, double tolerance) {
+			double lhs = this.expr.evaluate(values);
+			return (this.sense == Sense.LE && lhs > this.rhs + tolerance)
+					|| (this.sense == Sense.GE && lhs < this.rhs - tolerance)
+					|| (this.sense == Sense.EQ && Math.abs(lhs - this.rhs) > tolerance);
+		}
+	}
+
+	public enum Sense {
+		LE, GE, EQ
+	}
+
+	public enum Status {
+		OPTIMAL, FEASIBLE, INFEASIBLE, UNKNOWN
+	}
+
+}
@@ -0,0 +1,49 @@
+package util.ilp;
+
+import com.carrotsearch.hppc.DoubleArrayList;
+import com.carrotsearch.hppc.IntArrayList;
+
+/**
+ * Sparse linear expression over variables of an {@link IlpSolver}
+ */
+public class LinearExpr {
+
+	private IntArrayList vars = new IntArrayList();
+	private DoubleArrayList coefs = new DoubleArrayList();
+
+	public LinearExpr add(double coef, int var) {
+		this.vars.add(var);
+		this.coefs.add(coef);
+		return this;
+	}
+
+	public int size() {
+		return this.vars.size();
+	}
+
+	public int getVar(int i) {
+		return this.vars.get(i);
+	}
+
+	public double getCoef(int i) {
+		return this.coefs.get(i);
+	}
+
+	public double evaluate(double[] values) {
+		double sum = 0;
+		for (int i = 0; i < this.vars.size(); i++)
+			sum += this.coefs.get(i) * values[this.vars.get(i)];
+		return sum;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < this.vars.size(); i++) {
+			double c = this.coefs.get(i);
+			sb.append(c < 0 ? " - " : (i > 0 ? " + " : "")).append(Math.abs(c)).append(" x").append(this.vars.get(i));
+		}
+		return sb.toString();
+	}
+
+}
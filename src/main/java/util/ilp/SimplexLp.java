@@ -0,0 +1,461 @@
+package util.ilp;
+
+import java.util.Arrays;
+import java.util.List;
+
+import util.ilp.IlpSolver.Sense;
+
+/**
+ * Dense two-phase primal simplex for LPs with bounded variables
+ *
+ * Minimizes c*x subject to rows (sense) rhs and lb <= x <= ub. Non-basic
+ * variables sit at one of their bounds, so bounds do not need extra rows.
+ * Lower bounds have to be finite. Columns are structural variables, followed
+ * by one slack per inequality and artificial variables where needed. An
+ * optimal LP can be copied and resolved with changed bounds, starting from its
+ * basis with the dual simplex.
+ */
+class SimplexLp {
+
+	private static final double EPS = 1e-9;
+	private static final double PIVOT_EPS = 1e-7;
+	private static final double FEAS_EPS = 1e-6;
+	private static final int BLAND_AFTER = 50;
+
+	enum Result {
+		OPTIMAL, INFEASIBLE, UNBOUNDED, ABORTED,
+		// warm start gave up, solve from scratch
+		STALLED
+	}
+
+	private int m;
+	private int n;
+	private int cols;
+	private int firstArtificial;
+
+	private double[][] t;
+	private double[] beta;
+	private double[] d;
+	private double[] cost;
+	private double[] lb;
+	private double[] ub;
+	private int[] basis;
+	private int[] basisPos;
+	private boolean[] atUpper;
+	private int[] nzCols;
+
+	private long deadline;
+	private Result result;
+
+	SimplexLp(List<LinearExpr> rows, List<Sense> senses, double[] rhs, double[] cost, double[] lb, double[] ub,
+			long deadline) {
+		this.m = rows.size();
+		this.n = cost.length;
+		this.deadline = deadline;
+
+		int slacks = 0;
+		for (Sense s : senses)
+			if (s != Sense.EQ)
+				slacks++;
+
+		// dense rows and residuals with all structurals at lower bound
+		double[][] a = new double[this.m][];
+		double[] residual = new double[this.m];
+		boolean[] slackBasic = new boolean[this.m];
+		int artificials = 0;
+		for (int i = 0; i < this.m; i++) {
+			a[i] = new double[this.n];
+			LinearExpr row = rows.get(i);
+			for (int k = 0; k < row.size(); k++)
+				a[i][row.getVar(k)] += row.getCoef(k);
+			residual[i] = rhs[i];
+			for (int j = 0; j < this.n; j++)
+				if (a[i][j] != 0)
+					residual[i] -= a[i][j] * lb[j];
+			slackBasic[i] = (senses.get(i) == Sense.LE && residual[i] >= 0)
+					|| (senses.get(i) == Sense.GE && residual[i] <= 0);
+			if (!slackBasic[i])
+				artificials++;
+		}
+
+		this.firstArtificial = this.n + slacks;
+		this.cols = this.firstArtificial + artificials;
+		this.t = new double[this.m][this.cols];
+		this.beta = new double[this.m];
+		this.lb = new double[this.cols];
+		this.ub = new double[this.cols];
+		this.basis = new int[this.m];
+		this.basisPos = new int[this.cols];
+		this.atUpper = new boolean[this.cols];
+		this.nzCols = new int[this.cols];
+		Arrays.fill(this.basisPos, -1);
+		Arrays.fill(this.ub, Double.POSITIVE_INFINITY);
+		System.arraycopy(lb, 0, this.lb, 0, this.n);
+		System.arraycopy(ub, 0, this.ub, 0, this.n);
+		for (int j = 0; j < this.n; j++)
+			if (Double.isInfinite(lb[j]))
+				throw new IllegalArgumentException("variable without lower bound: " + j);
+
+		int slack = this.n;
+		int art = this.firstArtificial;
+		for (int i = 0; i < this.m; i++) {
+			System.arraycopy(a[i], 0, this.t[i], 0, this.n);
+			int slackCol = -1;
+			if (senses.get(i) != Sense.EQ) {
+				slackCol = slack++;
+				this.t[i][slackCol] = senses.get(i) == Sense.LE ? 1 : -1;
+			}
+			int basic;
+			if (slackBasic[i]) {
+				basic = slackCol;
+			} else {
+				basic = art++;
+				this.t[i][basic] = residual[i] >= 0 ? 1 : -1;
+			}
+			// scale row so that the basic variable has coefficient 1
+			if (this.t[i][basic] < 0)
+				for (int j = 0; j < this.cols; j++)
+					this.t[i][j] = -this.t[i][j];
+			this.beta[i] = Math.abs(residual[i]);
+			this.basis[i] = basic;
+			this.basisPos[basic] = i;
+		}
+
+		this.cost = new double[this.cols];
+		System.arraycopy(cost, 0, this.cost, 0, this.n);
+	}
+
+	private SimplexLp(SimplexLp lp) {
+		this.m = lp.m;
+		this.n = lp.n;
+		this.cols = lp.cols;
+		this.firstArtificial = lp.firstArtificial;
+		this.t = new double[this.m][];
+		for (int i = 0; i < this.m; i++)
+			this.t[i] = lp.t[i].clone();
+		this.beta = lp.beta.clone();
+		this.d = lp.d.clone();
+		this.cost = lp.cost;
+		this.lb = lp.lb.clone();
+		this.ub = lp.ub.clone();
+		this.basis = lp.basis.clone();
+		this.basisPos = lp.basisPos.clone();
+		this.atUpper = lp.atUpper.clone();
+		this.nzCols = new int[this.cols];
+		this.deadline = lp.deadline;
+		this.result = lp.result;
+	}
+
+	Result solve() {
+		this.result = this.run();
+		return this.result;
+	}
+
+	/**
+	 * copy of the tableau, e.g. to resolve it for another branch
+	 */
+	SimplexLp copy() {
+		return new SimplexLp(this);
+	}
+
+	int getNumRows() {
+		return this.m;
+	}
+
+	long getCells() {
+		return (long) this.m * this.cols;
+	}
+
+	/**
+	 * upper bound of the tableau size for the rows, with at most one slack and
+	 * one artificial per row
+	 */
+	static long estimateCells(List<Sense> senses, int n) {
+		long m = senses.size();
+		long slacks = 0;
+		for (Sense s : senses)
+			if (s != Sense.EQ)
+				slacks++;
+		return m * (n + slacks + m);
+	}
+
+	/**
+	 * solves the LP again with new bounds of the structural variables, starting
+	 * from the optimal basis of the last solve: non-basic variables move with
+	 * their bounds, the dual simplex removes the primal infeasibilities and the
+	 * primal simplex cleans up
+	 */
+	Result resolve(double[] lb, double[] ub) {
+		if (this.result != Result.OPTIMAL)
+			throw new IllegalStateException("no optimal basis to start from: " + this.result);
+		for (int j = 0; j < this.n; j++) {
+			if (Double.isInfinite(lb[j]))
+				throw new IllegalArgumentException("variable without lower bound: " + j);
+			if (this.basisPos[j] < 0) {
+				double old = this.getValue(j);
+				if (this.atUpper[j] && Double.isInfinite(ub[j]))
+					this.atUpper[j] = false;
+				double value = this.atUpper[j] ? ub[j] : lb[j];
+				if (value != old)
+					for (int i = 0; i < this.m; i++)
+						this.beta[i] -= this.t[i][j] * (value - old);
+			}
+			this.lb[j] = lb[j];
+			this.ub[j] = ub[j];
+		}
+		this.result = this.dual();
+		if (this.result == Result.OPTIMAL)
+			this.result = this.iterate();
+		return this.result;
+	}
+
+	Result getResult() {
+		return this.result;
+	}
+
+	private Result run() {
+
+		// phase 1: minimize sum of artificials
+		if (this.firstArtificial < this.cols) {
+			double[] phase1 = new double[this.cols];
+			for (int j = this.firstArtificial; j < this.cols; j++)
+				phase1[j] = 1;
+			this.initReducedCosts(phase1);
+			Result res = this.iterate();
+			if (res == Result.ABORTED)
+				return res;
+			double infeasibility = 0;
+			for (int i = 0; i < this.m; i++)
+				if (this.basis[i] >= this.firstArtificial)
+					infeasibility += this.beta[i];
+			if (infeasibility > FEAS_EPS)
+				return Result.INFEASIBLE;
+			this.removeArtificials();
+		}
+
+		// phase 2: original objective
+		this.initReducedCosts(this.cost);
+		return this.iterate();
+	}
+
+	double[] getSolution() {
+		double[] x = new double[this.n];
+		for (int j = 0; j < this.n; j++)
+			x[j] = this.getValue(j);
+		return x;
+	}
+
+	double getObjective() {
+		double obj = 0;
+		for (int j = 0; j < this.n; j++)
+			obj += this.cost[j] * this.getValue(j);
+		return obj;
+	}
+
+	private double getValue(int j) {
+		if (this.basisPos[j] >= 0)
+			return this.beta[this.basisPos[j]];
+		return this.atUpper[j] ? this.ub[j] : this.lb[j];
+	}
+
+	private void initReducedCosts(double[] c) {
+		this.d = c.clone();
+		for (int i = 0; i < this.m; i++) {
+			double cb = c[this.basis[i]];
+			if (cb != 0)
+				for (int j = 0; j < this.cols; j++)
+					this.d[j] -= cb * this.t[i][j];
+		}
+	}
+
+	private Result iterate() {
+		int degenerate = 0;
+		int iterations = 0;
+		while (true) {
+			if ((++iterations & 63) == 0 && this.deadline > 0 && System.currentTimeMillis() > this.deadline)
+				return Result.ABORTED;
+
+			// entering variable: Dantzig, Bland when stalling
+			int enter = -1;
+			double best = EPS;
+			for (int j = 0; j < this.cols; j++) {
+				if (this.basisPos[j] >= 0 || this.ub[j] - this.lb[j] <= EPS)
+					continue;
+				double gain = this.atUpper[j] ? this.d[j] : -this.d[j];
+				if (gain > best) {
+					enter = j;
+					if (degenerate > BLAND_AFTER)
+						break;
+					best = gain;
+				}
+			}
+			if (enter < 0)
+				return Result.OPTIMAL;
+
+			// ratio test, the entering variable moves by step in direction dir
+			int dir = this.atUpper[enter] ? -1 : 1;
+			double step = this.ub[enter] - this.lb[enter];
+			int leave = -1;
+			boolean leaveToUpper = false;
+			for (int i = 0; i < this.m; i++) {
+				double a = this.t[i][enter];
+				if (Math.abs(a) < PIVOT_EPS)
+					continue;
+				double delta = -dir * a;
+				int b = this.basis[i];
+				double limit;
+				boolean toUpper;
+				if (delta < 0) {
+					limit = (this.beta[i] - this.lb[b]) / -delta;
+					toUpper = false;
+				} else if (this.ub[b] < Double.POSITIVE_INFINITY) {
+					limit = (this.ub[b] - this.beta[i]) / delta;
+					toUpper = true;
+				} else {
+					continue;
+				}
+				if (limit < 0)
+					limit = 0;
+				if (limit < step - EPS || (leave >= 0 && limit <= step + EPS && b < this.basis[leave])) {
+					step = limit;
+					leave = i;
+					leaveToUpper = toUpper;
+				}
+			}
+			if (Double.isInfinite(step))
+				return Result.UNBOUNDED;
+
+			degenerate = step < EPS ? degenerate + 1 : 0;
+			for (int i = 0; i < this.m; i++)
+				this.beta[i] -= dir * this.t[i][enter] * step;
+
+			if (leave < 0) {
+				// bound flip, no basis change
+				this.atUpper[enter] = !this.atUpper[enter];
+				continue;
+			}
+
+			double value = dir > 0 ? this.lb[enter] + step : this.ub[enter] - step;
+			int out = this.basis[leave];
+			this.basisPos[out] = -1;
+			this.atUpper[out] = leaveToUpper;
+			this.pivot(leave, enter);
+			this.basis[leave] = enter;
+			this.basisPos[enter] = leave;
+			this.atUpper[enter] = false;
+			this.beta[leave] = value;
+		}
+	}
+
+	// dual simplex, keeps reduced costs feasible while fixing basic values
+	private Result dual() {
+		int limit = 10 * (this.m + this.cols);
+		for (int iterations = 1;; iterations++) {
+			if ((iterations & 63) == 0 && this.deadline > 0 && System.currentTimeMillis() > this.deadline)
+				return Result.ABORTED;
+			if (iterations > limit)
+				return Result.STALLED;
+
+			// leaving variable: largest bound violation
+			int leave = -1;
+			double worst = FEAS_EPS;
+			for (int i = 0; i < this.m; i++) {
+				int b = this.basis[i];
+				double violation = Math.max(this.lb[b] - this.beta[i], this.beta[i] - this.ub[b]);
+				if (violation > worst) {
+					worst = violation;
+					leave = i;
+				}
+			}
+			if (leave < 0)
+				return Result.OPTIMAL;
+			int out = this.basis[leave];
+			boolean toUpper = this.beta[leave] > this.ub[out];
+			double target = toUpper ? this.ub[out] : this.lb[out];
+
+			// entering variable: has to move the leaving one towards its bound,
+			// smallest ratio of reduced cost keeps the others dual feasible
+			int enter = -1;
+			double best = Double.POSITIVE_INFINITY;
+			for (int j = 0; j < this.cols; j++) {
+				if (this.basisPos[j] >= 0 || this.ub[j] - this.lb[j] <= EPS)
+					continue;
+				double a = this.t[leave][j];
+				if (Math.abs(a) < PIVOT_EPS || (a > 0) != (toUpper != this.atUpper[j]))
+					continue;
+				double ratio = Math.abs(this.d[j] / a);
+				if (ratio < best) {
+					best = ratio;
+					enter = j;
+				}
+			}
+			if (enter < 0)
+				return Result.INFEASIBLE;
+
+			double step = (this.beta[leave] - target) / this.t[leave][enter];
+			double value = this.getValue(enter) + step;
+			for (int i = 0; i < this.m; i++)
+				this.beta[i] -= this.t[i][enter] * step;
+			this.basisPos[out] = -1;
+			this.atUpper[out] = toUpper;
+			this.pivot(leave, enter);
+			this.basis[leave] = enter;
+			this.basisPos[enter] = leave;
+			this.atUpper[enter] = false;
+			this.beta[leave] = value;
+		}
+	}
+
+	private void pivot(int r, int col) {
+		double[] row = this.t[r];
+		double p = row[col];
+		int nz = 0;
+		int[] nzCols = this.nzCols;
+		for (int j = 0; j < this.cols; j++) {
+			if (row[j] != 0) {
+				row[j] /= p;
+				nzCols[nz++] = j;
+			}
+		}
+		for (int i = 0; i < this.m; i++) {
+			double f = this.t[i][col];
+			if (i != r && f != 0) {
+				double[] other = this.t[i];
+				for (int k = 0; k < nz; k++)
+					other[nzCols[k]] -= f * row[nzCols[k]];
+				other[col] = 0;
+			}
+		}
+		double f = this.d[col];
+		if (f != 0) {
+			for (int k = 0; k < nz; k++)
+				this.d[nzCols[k]] -= f * row[nzCols[k]];
+			this.d[col] = 0;
+		}
+	}
+
+	// after phase 1: pivot remaining artificials out, then fix them to 0
+	private void removeArtificials() {
+		for (int i = 0; i < this.m; i++) {
+			int b = this.basis[i];
+			if (b < this.firstArtificial)
+				continue;
+			for (int j = 0; j < this.firstArtificial; j++) {
+				if (this.basisPos[j] < 0 && Math.abs(this.t[i][j]) > PIVOT_EPS) {
+					double value = this.getValue(j);
+					this.basisPos[b] = -1;
+					this.atUpper[b] = false;
+					this.pivot(i, j);
+					this.basis[i] = j;
+					this.basisPos[j] = i;
+					this.atUpper[j] = false;
+					this.beta[i] = value;
+					break;
+				}
+			}
+		}
+		for (int j = this.firstArtificial; j < this.cols; j++)
+			this.ub[j] = 0;
+	}
+
+}